@@ -14,9 +14,62 @@ dependencies {
     implementation("org.xerial:sqlite-jdbc:3.41.2.2")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
-    implementation("org.apache.commons:commons-csv:1.11.0")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    // Reference parser of the former ingestion, which OhlcvParser is tested against
+    testImplementation("org.apache.commons:commons-csv:1.11.0")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Vectorized window kernels use the incubating Vector API, and fall back to scalar kernels without it
+val vectorModule = "--add-modules=jdk.incubator.vector"
+
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.add(vectorModule)
+}
+
+// Off-heap price histories live in direct buffers, whose limit otherwise defaults to the maximum heap size.
+// Applies to run and jmh, whose forked benchmark JVMs inherit it: gradle run -PmaxDirectMemory=<size>
+val maxDirectMemory = "-XX:MaxDirectMemorySize=" + ((findProperty("maxDirectMemory") as String?) ?: "4g")
+
+tasks.withType<JavaExec>().configureEach {
+    jvmArgs(vectorModule, maxDirectMemory)
+}
+
+tasks.withType<Test>().configureEach {
+    jvmArgs(vectorModule)
+}
+
+// JMH benchmarks, run with: gradle jmh [-Pjmh.args="<JMH options>"]
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val jmhImplementation by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+
+dependencies {
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    workingDir = projectDir
+    args = (findProperty("jmh.args") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+}
+
+// Keep benchmarks compiling with the rest of the build
+tasks.check {
+    dependsOn(tasks.named("jmhClasses"))
+}
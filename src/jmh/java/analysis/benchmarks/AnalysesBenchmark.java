@@ -0,0 +1,114 @@
+package analysis.benchmarks;
+
+import analysis.Analyses;
+import analysis.handlers.IngestionPipeline;
+import analysis.handlers.StorageHandler;
+import analysis.indicators.IndicatorEngine;
+import analysis.indicators.PriceSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that benchmarks every analysis of a sample stock at 30, 180 and 360-day windows, for each storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysesBenchmark {
+
+    @Param({"PER_TICKER", "UNIFIED", "MAPPED", "OFF_HEAP"})
+    public String storage;
+
+    @Param({"SMA", "EMA", "Volatility"})
+    public Analyses analysis;
+
+    @Param({"30", "180", "360"})
+    public int days;
+
+    @Param("aapl")
+    public String stock;
+
+    private Path directory;
+    private StorageHandler storageHandler;
+
+
+    /**
+     * Ingests the sample files into a new storage.
+     * @throws IOException if the sample files cannot be copied
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<File> samples = BenchmarkData.copySamples();
+        directory = Files.createTempDirectory("analyses");
+        storageHandler = BenchmarkData.open(storage, directory);
+        new IngestionPipeline(storageHandler, 1).run(samples);
+        BenchmarkData.delete(samples.get(0).getParentFile().toPath());
+
+        if (!storageHandler.isAvailable(stock)) {
+            throw new IllegalStateException("Stock not ingested: " + stock);
+        }
+    }
+
+
+    /**
+     * Runs one analysis through the analysis methods of the storage.
+     * @return the result of the analysis
+     */
+    @Benchmark
+    public float query() {
+        switch (analysis) {
+            case SMA:
+                return storageHandler.getSMA(stock, days);
+            case EMA:
+                return storageHandler.getEMA(stock, days);
+            case Volatility:
+                return storageHandler.getVolatility(stock, days);
+            default:
+                throw new IllegalStateException("Unknown analysis: " + analysis);
+        }
+    }
+
+
+    /**
+     * Runs one analysis the same way UserHandler does, loading the price history and calculating in memory.
+     * @return the result of the analysis
+     */
+    @Benchmark
+    public double compute() {
+        PriceSeries series = storageHandler.getPriceSeries(stock);
+        return IndicatorEngine.compute(series, EnumSet.of(analysis), days).get(analysis)[0];
+    }
+
+
+    /**
+     * Closes and deletes the storage.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageHandler.close();
+        BenchmarkData.delete(directory);
+    }
+
+}
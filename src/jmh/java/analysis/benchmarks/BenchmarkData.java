@@ -0,0 +1,162 @@
+package analysis.benchmarks;
+
+import analysis.handlers.DatabaseHandler;
+import analysis.handlers.MappedFileHandler;
+import analysis.handlers.OffHeapStorageHandler;
+import analysis.handlers.StorageHandler;
+import analysis.handlers.StorageMode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * A class that prepares the data and storages used by the benchmarks, always in temporary directories so that
+ * the database in data/ is never modified.
+ */
+final class BenchmarkData {
+
+    /**
+     * The directory of the sample .csv files, relative to the project directory
+     */
+    static final String SAMPLE_DIRECTORY = "data";
+
+    /**
+     * The most rows written to one synthetic .csv file, about 20 years of daily quotes
+     */
+    static final int ROWS_PER_TICKER = 5_000;
+
+    private static final LocalDate LAST_DATE = LocalDate.of(2024, 9, 16);
+
+
+    private BenchmarkData() {
+    }
+
+
+    /**
+     * Opens a storage in the given directory.
+     * @param storage the storage to open: PER_TICKER or UNIFIED for a database in that mode, MAPPED for
+     *                memory-mapped files, OFF_HEAP for off-heap columns loaded from a UNIFIED database
+     * @param directory the directory of the storage
+     * @return the opened storage
+     */
+    static StorageHandler open(String storage, Path directory) {
+        if (storage.equals("MAPPED")) {
+            return new MappedFileHandler(directory.resolve("bin").toString());
+        }
+        if (storage.equals("OFF_HEAP")) {
+            return new OffHeapStorageHandler(
+                    new DatabaseHandler("jdbc:sqlite:" + directory.resolve("stocks.db"), StorageMode.UNIFIED));
+        }
+        return new DatabaseHandler("jdbc:sqlite:" + directory.resolve("stocks.db"), StorageMode.valueOf(storage));
+    }
+
+
+    /**
+     * Copies the sample .csv files into a new temporary directory.
+     * @return the copied .csv files
+     * @throws IOException if the files cannot be copied
+     */
+    static List<File> copySamples() throws IOException {
+        Path directory = Files.createTempDirectory("samples");
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> samples = Files.list(Path.of(SAMPLE_DIRECTORY))) {
+            for (Path sample : (Iterable<Path>) samples::iterator) {
+                if (sample.getFileName().toString().endsWith(".csv")) {
+                    Path copy = directory.resolve(sample.getFileName());
+                    Files.copy(sample, copy, StandardCopyOption.REPLACE_EXISTING);
+                    files.add(copy.toFile());
+                }
+            }
+        }
+        return files;
+    }
+
+
+    /**
+     * Writes synthetic .csv files with the given number of rows in total into a new temporary directory. Prices
+     * follow a seeded random walk, so that every run benchmarks the same data. Rows are split into files of at
+     * most ROWS_PER_TICKER daily quotes, ordered by date descending like the sample files.
+     * @param rows the number of rows in total
+     * @return the written .csv files
+     * @throws IOException if the files cannot be written
+     */
+    static List<File> writeSynthetic(int rows) throws IOException {
+        Path directory = Files.createTempDirectory("synthetic");
+        Random random = new Random(42);
+        List<File> files = new ArrayList<>();
+
+        for (int ticker = 0; rows > 0; ticker++) {
+            int tickerRows = Math.min(rows, ROWS_PER_TICKER);
+            rows -= tickerRows;
+
+            // Walk prices backwards from the most recent date
+            Path file = directory.resolve("SYN" + ticker + ".csv");
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("Date,Open,High,Low,Close,Volume");
+                writer.newLine();
+
+                double close = 100 + random.nextInt(100);
+                long lastDay = LAST_DATE.toEpochDay();
+                for (int i = 0; i < tickerRows; i++) {
+                    LocalDate date = LocalDate.ofEpochDay(lastDay - i);
+                    double open = Math.max(1, close * (1 + random.nextGaussian() * 0.01));
+                    double high = Math.max(open, close) * (1 + random.nextDouble() * 0.01);
+                    double low = Math.min(open, close) * (1 - random.nextDouble() * 0.01);
+                    long volume = 1_000_000 + random.nextInt(50_000_000);
+
+                    writer.write(String.format("%02d/%02d/%04d", date.getMonthValue(), date.getDayOfMonth(),
+                            date.getYear()));
+                    writer.write(",\"" + cents(open) + "\",\"" + cents(high) + "\",\"" + cents(low) + "\",\""
+                            + cents(close) + "\",\"" + volume + "\"");
+                    writer.newLine();
+
+                    close = open;
+                }
+            }
+            files.add(file.toFile());
+        }
+        return files;
+    }
+
+
+    /**
+     * Formats a price rounded to cents.
+     * @param price the price
+     * @return the price with two decimal places
+     */
+    private static String cents(double price) {
+        long cents = Math.round(price * 100);
+        return cents / 100 + "." + (cents % 100 < 10 ? "0" : "") + cents % 100;
+    }
+
+
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     * @param directory the directory to delete
+     */
+    static void delete(Path directory) {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package analysis.benchmarks;
+
+import analysis.handlers.DatabaseHandler;
+import analysis.handlers.IngestionPipeline;
+import analysis.handlers.UpdateResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that benchmarks a full reload of synthetic datasets into an empty database, with the default profile
+ * against the bulk-load profile of DatabaseHandler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BulkLoadBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"PER_TICKER", "UNIFIED"})
+    public String storage;
+
+    @Param({"false", "true"})
+    public boolean bulk;
+
+    private List<File> files;
+    private Path directory;
+    private DatabaseHandler databaseHandler;
+
+
+    /**
+     * Writes the synthetic files.
+     * @throws IOException if the files cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = BenchmarkData.writeSynthetic(rows);
+    }
+
+
+    /**
+     * Opens an empty database before every load.
+     * @throws IOException if the directory of the database cannot be created
+     */
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("bulk");
+        databaseHandler = (DatabaseHandler) BenchmarkData.open(storage, directory);
+    }
+
+
+    /**
+     * Loads all synthetic files into the empty database, once per iteration.
+     * @return whether data from each file was written
+     */
+    @Benchmark
+    public Map<File, UpdateResult> load() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        return bulk
+                ? databaseHandler.bulkLoad(files, parallelism)
+                : new IngestionPipeline(databaseHandler, parallelism).run(files);
+    }
+
+
+    /**
+     * Closes and deletes the database of the iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void close() {
+        databaseHandler.close();
+        BenchmarkData.delete(directory);
+    }
+
+
+    /**
+     * Deletes the synthetic files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(files.get(0).getParentFile().toPath());
+    }
+
+}
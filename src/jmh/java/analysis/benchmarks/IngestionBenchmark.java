@@ -0,0 +1,100 @@
+package analysis.benchmarks;
+
+import analysis.handlers.IngestionPipeline;
+import analysis.handlers.StorageHandler;
+import analysis.handlers.UpdateResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that benchmarks the ingestion of the sample .csv files in data/ into an empty storage, for each
+ * storage and number of parsing threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param({"PER_TICKER", "UNIFIED", "MAPPED"})
+    public String storage;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private List<File> samples;
+    private Path directory;
+    private StorageHandler storageHandler;
+
+
+    /**
+     * Copies the sample files once, so that the benchmark does not depend on data/ being unchanged.
+     * @throws IOException if the sample files cannot be copied
+     */
+    @Setup(Level.Trial)
+    public void copySamples() throws IOException {
+        samples = BenchmarkData.copySamples();
+    }
+
+
+    /**
+     * Opens an empty storage before every ingestion, since unchanged files would be skipped otherwise.
+     * @throws IOException if the directory of the storage cannot be created
+     */
+    @Setup(Level.Invocation)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("ingestion");
+        storageHandler = BenchmarkData.open(storage, directory);
+    }
+
+
+    /**
+     * Ingests all sample files.
+     * @return whether data from each file was written
+     */
+    @Benchmark
+    public Map<File, UpdateResult> ingest() {
+        return new IngestionPipeline(storageHandler, parallelism).run(samples);
+    }
+
+
+    /**
+     * Closes and deletes the storage after every ingestion.
+     */
+    @TearDown(Level.Invocation)
+    public void close() {
+        storageHandler.close();
+        BenchmarkData.delete(directory);
+    }
+
+
+    /**
+     * Deletes the copied sample files.
+     */
+    @TearDown(Level.Trial)
+    public void deleteSamples() {
+        BenchmarkData.delete(samples.get(0).getParentFile().toPath());
+    }
+
+}
@@ -0,0 +1,85 @@
+package analysis.benchmarks;
+
+import analysis.indicators.WindowKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that benchmarks the scalar against the vectorized window kernels, over price arrays from a 1-year
+ * window to the full history of a large universe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelsBenchmark {
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"256", "5000", "100000", "1000000"})
+    public int size;
+
+    private WindowKernels kernels;
+    private double[] prices;
+
+
+    /**
+     * Generates a random walk of prices and selects the kernels.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        kernels = kernel.equals("vector") ? WindowKernels.get() : WindowKernels.scalar();
+        if (kernel.equals("vector") && !kernels.isVectorized()) {
+            throw new IllegalStateException("Vector API is not available");
+        }
+
+        Random random = new Random(42);
+        prices = new double[size];
+        double price = 100;
+        for (int i = 0; i < size; i++) {
+            price = Math.max(1, price + random.nextGaussian());
+            prices[i] = price;
+        }
+    }
+
+
+    @Benchmark
+    public double sum() {
+        return kernels.sum(prices, 0, size);
+    }
+
+
+    @Benchmark
+    public double sumOfSquares() {
+        return kernels.sumOfSquares(prices, 0, size);
+    }
+
+
+    @Benchmark
+    public double variance() {
+        return kernels.variance(prices, 0, size);
+    }
+
+
+    @Benchmark
+    public double minMax() {
+        return kernels.max(prices, 0, size) - kernels.min(prices, 0, size);
+    }
+
+}
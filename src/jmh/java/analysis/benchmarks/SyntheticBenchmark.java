@@ -0,0 +1,127 @@
+package analysis.benchmarks;
+
+import analysis.handlers.IngestionPipeline;
+import analysis.handlers.StorageHandler;
+import analysis.handlers.UpdateResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that benchmarks ingestion and analyses on synthetic datasets from 1k to 10M rows, split into stocks of
+ * at most 5,000 daily quotes each. Large datasets take long to generate and ingest, so the sizes to run can be
+ * narrowed with the JMH option -p rows=...
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SyntheticBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"PER_TICKER", "UNIFIED", "MAPPED"})
+    public String storage;
+
+    private List<File> files;
+    private String stock;
+    private Path loadedDirectory;
+    private StorageHandler loaded;
+    private Path directory;
+    private StorageHandler storageHandler;
+
+
+    /**
+     * Writes the synthetic files and ingests them once into the storage that analyses run on.
+     * @throws IOException if the files or the storage cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = BenchmarkData.writeSynthetic(rows);
+        loadedDirectory = Files.createTempDirectory("synthetic-loaded");
+        loaded = BenchmarkData.open(storage, loadedDirectory);
+        new IngestionPipeline(loaded, Runtime.getRuntime().availableProcessors()).run(files);
+
+        // Analyze the first stock, which always has the most rows
+        stock = loaded.getAvailableStocks().get(0);
+    }
+
+
+    /**
+     * Opens an empty storage before every ingestion.
+     * @throws IOException if the directory of the storage cannot be created
+     */
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("synthetic");
+        storageHandler = BenchmarkData.open(storage, directory);
+    }
+
+
+    /**
+     * Ingests all synthetic files into an empty storage, once per iteration.
+     * @return whether data from each file was written
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<File, UpdateResult> ingest() {
+        return new IngestionPipeline(storageHandler, Runtime.getRuntime().availableProcessors()).run(files);
+    }
+
+
+    /**
+     * Runs every analysis at a 360-day window on one stock of the dataset.
+     * @param blackhole the sink of the results
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void analyze(Blackhole blackhole) {
+        blackhole.consume(loaded.getSMA(stock, 360));
+        blackhole.consume(loaded.getEMA(stock, 360));
+        blackhole.consume(loaded.getVolatility(stock, 360));
+    }
+
+
+    /**
+     * Closes and deletes the storage of the iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void close() {
+        storageHandler.close();
+        BenchmarkData.delete(directory);
+    }
+
+
+    /**
+     * Closes and deletes the analyzed storage and the synthetic files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loaded.close();
+        BenchmarkData.delete(loadedDirectory);
+        BenchmarkData.delete(files.get(0).getParentFile().toPath());
+    }
+
+}
@@ -1,7 +1,9 @@
 package analysis;
 
 
+import analysis.handlers.CachingStorageHandler;
 import analysis.handlers.DatabaseHandler;
+import analysis.handlers.StorageHandler;
 import analysis.handlers.UserHandler;
 
 
@@ -13,12 +15,13 @@ public class Main {
         String dataSourcePath = "data/";
         String databaseUrl = "jdbc:sqlite:data/stocks.db";
 
-        DatabaseHandler dbHandler = new DatabaseHandler(databaseUrl);
-        UserHandler userHandler = new UserHandler(dbHandler);
+        // Keep recent analysis results in memory, dropping those of rewritten stocks
+        StorageHandler storageHandler = new CachingStorageHandler(new DatabaseHandler(databaseUrl), 1024);
+        UserHandler userHandler = new UserHandler(storageHandler);
 
 
-        // Update data of historical quotes in database with .csv files in path
-        userHandler.updateDB(dataSourcePath);
+        // Update data of historical quotes in database with .csv files in path, parsing files on all cores
+        userHandler.updateDB(dataSourcePath, Runtime.getRuntime().availableProcessors());
 
 
         // Prompt for valid stock in the database
@@ -40,6 +43,9 @@ public class Main {
         userHandler.analyze(Analyses.Volatility, stock, 30, 90);
 
 
+        // Release database connections
+        storageHandler.close();
+
     }
 
 }
\ No newline at end of file
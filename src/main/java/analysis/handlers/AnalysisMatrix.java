@@ -0,0 +1,182 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class that holds the results of several analyses in several time periods for many stocks, in a single
+ * dense array. Results are laid out by stock, then analysis, then time period, so that all results of one
+ * stock are next to each other. Results of stocks without data are NaN, as are those of stocks whose analysis
+ * failed, which are told apart by their failures.
+ */
+public class AnalysisMatrix {
+
+    private final List<String> stocks;
+    private final List<Analyses> analyses;
+    private final int[] days;
+    private final double[] values;
+    private final Throwable[] failures;
+
+
+    /**
+     * A class that holds the results of several analyses in several time periods for many stocks.
+     * @param stocks the stock tickers, one row each
+     * @param analyses the analyses, in the order of their results within a row
+     * @param days the time periods, in the order of their results within an analysis
+     */
+    AnalysisMatrix(List<String> stocks, List<Analyses> analyses, int[] days) {
+        this.stocks = List.copyOf(stocks);
+        this.analyses = List.copyOf(analyses);
+        this.days = days.clone();
+        this.values = new double[stocks.size() * analyses.size() * days.length];
+        Arrays.fill(values, Double.NaN);
+        this.failures = new Throwable[stocks.size()];
+    }
+
+
+    /**
+     * Sets the results of a stock.
+     * @param stock the index of the stock
+     * @param results the results for each analysis, in the order of the time periods; null if the stock has
+     *                no data
+     */
+    void setRow(int stock, Map<Analyses, double[]> results) {
+        for (int a = 0; a < analyses.size(); a++) {
+            double[] row = results == null ? null : results.get(analyses.get(a));
+            for (int d = 0; d < days.length; d++) {
+                values[index(stock, a, d)] = row == null ? Double.NaN : row[d];
+            }
+        }
+    }
+
+
+    /**
+     * Marks the analysis of a stock as failed, clearing its results.
+     * @param stock the index of the stock
+     * @param failure the cause of the failure
+     */
+    void setFailed(int stock, Throwable failure) {
+        setRow(stock, null);
+        failures[stock] = failure;
+    }
+
+
+    /**
+     * Gets the index of a result in the dense array.
+     * @param stock the index of the stock
+     * @param analysis the index of the analysis
+     * @param period the index of the time period
+     * @return the index of the result
+     */
+    public int index(int stock, int analysis, int period) {
+        return (stock * analyses.size() + analysis) * days.length + period;
+    }
+
+
+    /**
+     * Gets a result by its indexes.
+     * @param stock the index of the stock
+     * @param analysis the index of the analysis
+     * @param period the index of the time period
+     * @return the result, NaN if the stock has no data
+     */
+    public double get(int stock, int analysis, int period) {
+        return values[index(stock, analysis, period)];
+    }
+
+
+    /**
+     * Gets a result by stock ticker, analysis and time period.
+     * @param stock the stock ticker
+     * @param analysis the analysis
+     * @param days the time period
+     * @return the result, NaN if the stock has no data
+     * @throws IllegalArgumentException if the stock, analysis or time period is not part of the matrix
+     */
+    public double get(String stock, Analyses analysis, int days) {
+        int s = stocks.indexOf(stock);
+        int a = analyses.indexOf(analysis);
+        int d = -1;
+        for (int i = 0; i < this.days.length && d < 0; i++) {
+            if (this.days[i] == days) {
+                d = i;
+            }
+        }
+        if (s < 0 || a < 0 || d < 0) {
+            throw new IllegalArgumentException("Not in matrix: " + stock + ", " + analysis + ", " + days);
+        }
+        return get(s, a, d);
+    }
+
+
+    /**
+     * Gets the stock tickers, in row order.
+     * @return the stock tickers
+     */
+    public List<String> stocks() {
+        return stocks;
+    }
+
+
+    /**
+     * Gets the analyses, in the order of their results within a row.
+     * @return the analyses
+     */
+    public List<Analyses> analyses() {
+        return analyses;
+    }
+
+
+    /**
+     * Gets the time periods, in the order of their results within an analysis.
+     * @return the time periods
+     */
+    public int[] days() {
+        return days.clone();
+    }
+
+
+    /**
+     * Gets all results as a dense array, laid out by stock, then analysis, then time period.
+     * @return the dense array of results, shared with this matrix
+     */
+    public double[] values() {
+        return values;
+    }
+
+
+    /**
+     * Gets the stock tickers that had no data.
+     * @return the stock tickers without results, other than those whose analysis failed
+     */
+    public List<String> missingStocks() {
+        List<String> missing = new ArrayList<>();
+        for (int s = 0; s < stocks.size(); s++) {
+            if (failures[s] == null && !analyses.isEmpty() && days.length > 0 && Double.isNaN(get(s, 0, 0))) {
+                missing.add(stocks.get(s));
+            }
+        }
+        return missing;
+    }
+
+
+    /**
+     * Gets the stock tickers whose analysis failed, such as on a database access error, with their failures.
+     * @return the failures by stock ticker, in row order, empty if every stock was analyzed
+     */
+    public Map<String, Throwable> failedStocks() {
+        Map<String, Throwable> failed = new LinkedHashMap<>();
+        for (int s = 0; s < stocks.size(); s++) {
+            if (failures[s] != null) {
+                failed.put(stocks.get(s), failures[s]);
+            }
+        }
+        return failed;
+    }
+
+}
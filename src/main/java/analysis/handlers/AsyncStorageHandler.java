@@ -0,0 +1,207 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that runs the operations of a storage, such as a DatabaseHandler, asynchronously and returns their
+ * results as CompletableFutures, so that callers can analyze many stocks at once and compose pipelines, e.g.
+ * ingesting a file, then analyzing its stock, then alerting on the results, without blocking their threads.
+ * Reads and the parsing of .csv files run on a pool of reader threads, while all writes run on a single writer
+ * thread in submission order, since SQLite allows a single writer. The handler should be closed when it is no
+ * longer needed, which also closes the storage.
+ */
+public class AsyncStorageHandler implements AutoCloseable {
+
+    private final StorageHandler storageHandler;
+    private final ExecutorService readers;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+
+    /**
+     * A class that runs the operations of a storage asynchronously.
+     * @param storageHandler the storage of stock prices
+     * @param readers the number of threads reading from the storage and parsing files; reads beyond the
+     *                connections of a DatabaseHandler wait for one to be returned
+     */
+    public AsyncStorageHandler(StorageHandler storageHandler, int readers) {
+        if (readers <= 0) {
+            throw new IllegalArgumentException("Readers must be positive: " + readers);
+        }
+        this.storageHandler = storageHandler;
+        this.readers = Executors.newFixedThreadPool(readers);
+    }
+
+
+    /**
+     * Updates the storage with the data in the given .csv file, skipping unchanged files. The file is parsed on
+     * a reader thread and written on the writer thread.
+     * @param file .csv file to be read from
+     * @return completes with whether data from the file was written, the file is unchanged, or the file could
+     *         not be ingested
+     */
+    public CompletableFuture<UpdateResult> updateDB(File file) {
+        return CompletableFuture.supplyAsync(() -> storageHandler.prepareUpdate(file), readers)
+                .handleAsync((update, failure) -> {
+                    if (failure != null) {
+                        System.out.println(failure.getCause() != null ? failure.getCause().getMessage()
+                                : failure.getMessage());
+                        return UpdateResult.FAILED;
+                    }
+                    if (update == null) {
+                        return UpdateResult.UNCHANGED;
+                    }
+                    boolean written = storageHandler.writeUpdates(List.of(update));
+                    return written ? UpdateResult.WRITTEN : UpdateResult.FAILED;
+                }, writer);
+    }
+
+
+    /**
+     * Updates the storage with the data in the given .csv files, skipping unchanged files. Files are parsed
+     * concurrently on the reader threads, and each one is written as soon as it is parsed.
+     * @param files the .csv files to be read from
+     * @return completes once all files are written, with whether data from each file was written, it is
+     *         unchanged, or it could not be ingested, in the given order
+     */
+    public CompletableFuture<Map<File, UpdateResult>> updateDB(List<File> files) {
+        List<CompletableFuture<UpdateResult>> updates = new ArrayList<>(files.size());
+        for (File file : files) {
+            updates.add(updateDB(file));
+        }
+
+        return CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<File, UpdateResult> updated = new LinkedHashMap<>();
+            for (int i = 0; i < files.size(); i++) {
+                updated.put(files.get(i), updates.get(i).join());
+            }
+            return updated;
+        });
+    }
+
+
+    /**
+     * Ingests a single .csv file of any size with bounded memory on the writer thread, see
+     * DatabaseHandler.streamUpdate. Streams into the database of the storage, also if it is wrapped, such as by a
+     * CachingStorageHandler or an OffHeapStorageHandler, which drop what they hold of the streamed stock once
+     * it is written.
+     * @param file .csv file to be read from
+     * @param rowsPerBatch the rows sent to the database at once
+     * @param rowsPerTransaction the rows written between commits, rounded up to whole batches
+     * @param progress receives the progress after every batch on the writer thread, or null
+     * @return completes with whether data from the file was written, the file is unchanged, or the file could
+     *         not be ingested, or completes exceptionally with an UnsupportedOperationException if the storage
+     *         does not write to a database, or with an IllegalArgumentException if the arguments are invalid
+     */
+    public CompletableFuture<UpdateResult> streamUpdate(File file, int rowsPerBatch, int rowsPerTransaction,
+                                                        IngestProgress progress) {
+        DatabaseHandler databaseHandler = storageHandler.getDatabaseHandler();
+        if (databaseHandler == null) {
+            return CompletableFuture.failedFuture(
+                    new UnsupportedOperationException("Streaming updates need a DatabaseHandler"));
+        }
+        return CompletableFuture.supplyAsync(
+                () -> databaseHandler.streamUpdate(file, rowsPerBatch, rowsPerTransaction, progress), writer);
+    }
+
+
+    /**
+     * Gets a list of available stock tickers.
+     * @return completes with the list of available stock tickers in alphabetical order
+     */
+    public CompletableFuture<List<String>> getAvailableStocks() {
+        return CompletableFuture.supplyAsync(storageHandler::getAvailableStocks, readers);
+    }
+
+
+    /**
+     * Gets the most recent date of a valid stock ticker.
+     * @param stock the stock ticker
+     * @return completes with the most recent date in epoch days, Integer.MIN_VALUE if the stock is invalid or
+     *         has no data
+     */
+    public CompletableFuture<Integer> getLastDate(String stock) {
+        return CompletableFuture.supplyAsync(() -> storageHandler.getLastDate(stock), readers);
+    }
+
+
+    /**
+     * Gets the Simple Moving Average (SMA) of a valid stock ticker in the given time period.
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return completes with the Simple Moving Average of the stock if it is valid, 0 otherwise
+     */
+    public CompletableFuture<Float> getSMA(String stock, int days) {
+        return CompletableFuture.supplyAsync(() -> storageHandler.getSMA(stock, days), readers);
+    }
+
+
+    /**
+     * Gets the Exponential Moving Average (EMA) of a valid stock ticker in the given time period.
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return completes with the Exponential Moving Average of the stock if it is valid, 0 otherwise
+     */
+    public CompletableFuture<Float> getEMA(String stock, int days) {
+        return CompletableFuture.supplyAsync(() -> storageHandler.getEMA(stock, days), readers);
+    }
+
+
+    /**
+     * Gets the Price Volatility of a valid stock ticker in the given time period.
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return completes with the Price Volatility of the stock if it is valid, 0 otherwise
+     */
+    public CompletableFuture<Float> getVolatility(String stock, int days) {
+        return CompletableFuture.supplyAsync(() -> storageHandler.getVolatility(stock, days), readers);
+    }
+
+
+    /**
+     * Calculates the given analyses of a valid stock ticker in all given time periods at once.
+     * @param analyses the analyses to be performed
+     * @param stock the stock ticker to analyze
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     * @return completes with the results for each analysis, in the order of the time periods, or with null if
+     *         the stock is invalid
+     */
+    public CompletableFuture<Map<Analyses, double[]>> analyze(Set<Analyses> analyses, String stock, int... days) {
+        return CompletableFuture.supplyAsync(() -> storageHandler.analyze(analyses, stock, days), readers);
+    }
+
+
+    /**
+     * Waits for all submitted operations to complete, then stops the reader and writer threads and closes the
+     * storage.
+     */
+    @Override
+    public void close() {
+        // Stop readers first, so that no update is submitted to the writer after it stops
+        readers.shutdown();
+        try {
+            readers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            writer.shutdown();
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            readers.shutdownNow();
+            writer.shutdownNow();
+            storageHandler.close();
+        }
+    }
+
+}
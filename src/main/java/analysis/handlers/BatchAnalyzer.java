@@ -0,0 +1,119 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A class that runs the same analyses in the same time periods for many stocks at once, such as to screen all
+ * available stocks. Stocks are analyzed in parallel on a fork-join pool with a bounded number of threads, each
+ * stock loading its price history once for all analyses, and the results are collected into a dense matrix.
+ */
+public class BatchAnalyzer {
+
+    private final StorageHandler storageHandler;
+    private final int parallelism;
+
+
+    /**
+     * A class that runs the same analyses in the same time periods for many stocks at once.
+     * @param storageHandler the storage of stock prices
+     * @param parallelism the most stocks analyzed at the same time
+     */
+    public BatchAnalyzer(StorageHandler storageHandler, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.storageHandler = storageHandler;
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * Calculates the given analyses of all given stocks in the given time periods. Returns once all stocks are
+     * analyzed, or once interrupted, marking the stocks not analyzed by then as failed.
+     * @param stocks the stock tickers to analyze, one row each in the given order
+     * @param analyses the analyses to be performed
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     * @return the results, NaN for stocks that are invalid or have no data, and for stocks whose analysis failed,
+     *         which are listed by AnalysisMatrix.failedStocks
+     */
+    public AnalysisMatrix analyze(Collection<String> stocks, Set<Analyses> analyses, int... days) {
+        AnalysisMatrix matrix = new AnalysisMatrix(new ArrayList<>(stocks), new ArrayList<>(analyses), days);
+        List<String> rows = matrix.stocks();
+        if (rows.isEmpty() || analyses.isEmpty() || days.length == 0) { // If there is nothing to analyze, return
+            return matrix;
+        }
+
+        // One task per stock, each one writing only its own row
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, rows.size()));
+        List<Future<?>> tasks = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            int row = i;
+            tasks.add(pool.submit(() -> analyzeRow(matrix, row, analyses, days)));
+        }
+
+        // Wait for every stock, as each failed one is marked instead of stopping the others
+        try {
+            for (int row = 0; row < tasks.size(); row++) {
+                try {
+                    tasks.get(row).get();
+                }
+                catch (ExecutionException e) {
+                    matrix.setFailed(row, e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int row = 0; row < tasks.size(); row++) {
+                Future<?> task = tasks.get(row);
+                task.cancel(true);
+                if (task.isCancelled()) {
+                    matrix.setFailed(row, new CancellationException("Interrupted analyzing " + rows.get(row)));
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        return matrix;
+    }
+
+
+    /**
+     * Calculates the given analyses of one stock into its row of the results, or marks it as failed.
+     * @param matrix the results
+     * @param row the index of the stock
+     * @param analyses the analyses to be performed
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     */
+    private void analyzeRow(AnalysisMatrix matrix, int row, Set<Analyses> analyses, int[] days) {
+        try {
+            matrix.setRow(row, storageHandler.analyze(analyses, matrix.stocks().get(row), days));
+        }
+        catch (RuntimeException e) {
+            matrix.setFailed(row, e);
+        }
+    }
+
+
+    /**
+     * Calculates the given analyses of all available stocks in the given time periods.
+     * @param analyses the analyses to be performed
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     * @return the results, one row per available stock in alphabetical order
+     */
+    public AnalysisMatrix analyzeAll(Set<Analyses> analyses, int... days) {
+        return analyze(storageHandler.getAvailableStocks(), analyses, days);
+    }
+
+}
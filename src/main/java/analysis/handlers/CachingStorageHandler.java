@@ -0,0 +1,243 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.PriceSeries;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A class that puts a result cache in front of another storage, so that repeated analyses of unchanged stocks
+ * are answered from memory, without accessing the storage. All results of a stock are dropped whenever the
+ * storage notifies that its data changed, whichever method wrote it, such as DatabaseHandler.bulkLoad or
+ * streamUpdate, and also when its most recent row is only corrected.
+ */
+public class CachingStorageHandler implements StorageHandler {
+
+    private final StorageHandler storageHandler;
+    private final ResultCache cache;
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+
+    /**
+     * A class that puts a result cache in front of another storage, and listens to the updates of the storage.
+     * @param storageHandler the storage to cache the results of
+     * @param capacity the most results to keep
+     */
+    public CachingStorageHandler(StorageHandler storageHandler, int capacity) {
+        this.storageHandler = storageHandler;
+        this.cache = new ResultCache(capacity);
+        storageHandler.addUpdateListener(this::invalidate);
+    }
+
+
+    @Override
+    public CsvUpdate prepareUpdate(File file) {
+        return storageHandler.prepareUpdate(file);
+    }
+
+
+    @Override
+    public boolean writeUpdates(List<CsvUpdate> updates) {
+        return storageHandler.writeUpdates(updates);
+    }
+
+
+    /**
+     * Drops all cached results of a stock, such as when the storage notifies that its data changed, or when it
+     * was changed outside of the storage.
+     * @param stock the stock ticker
+     */
+    public void invalidate(String stock) {
+        // Hold the cache, so that no result is stored between counting the generation and dropping the results
+        synchronized (cache) {
+            generations.merge(stock, 1L, Long::sum);
+            cache.invalidate(stock);
+        }
+    }
+
+
+    @Override
+    public void addUpdateListener(UpdateListener listener) {
+        storageHandler.addUpdateListener(listener);
+    }
+
+
+    @Override
+    public DatabaseHandler getDatabaseHandler() {
+        return storageHandler.getDatabaseHandler();
+    }
+
+
+    @Override
+    public List<String> getAvailableStocks() {
+        return storageHandler.getAvailableStocks();
+    }
+
+
+    @Override
+    public boolean isAvailable(String stock) {
+        return storageHandler.isAvailable(stock);
+    }
+
+
+    @Override
+    public PriceSeries getPriceSeries(String stock) {
+        return storageHandler.getPriceSeries(stock);
+    }
+
+
+    @Override
+    public int getLastDate(String stock) {
+        return storageHandler.getLastDate(stock);
+    }
+
+
+    @Override
+    public float getSMA(String stock, int days) {
+        return (float) cached(Analyses.SMA, stock, days, () -> storageHandler.getSMA(stock, days));
+    }
+
+
+    @Override
+    public float getEMA(String stock, int days) {
+        return (float) cached(Analyses.EMA, stock, days, () -> storageHandler.getEMA(stock, days));
+    }
+
+
+    @Override
+    public float getVolatility(String stock, int days) {
+        return (float) cached(Analyses.Volatility, stock, days, () -> storageHandler.getVolatility(stock, days));
+    }
+
+
+    /**
+     * Gets a result from the cache, calculating and caching it if it is missing.
+     * @param analysis the analysis
+     * @param stock the stock ticker
+     * @param days the time period
+     * @param calculation the calculation of the result by the storage
+     * @return the result if the stock is valid, 0 otherwise
+     */
+    private double cached(Analyses analysis, String stock, int days, DoubleSupplier calculation) {
+        long generation = generation(stock);
+        if (!isAvailable(stock)) {
+            return 0;
+        }
+
+        Double result = cache.get(stock, analysis, days);
+        if (result == null) {
+            result = calculation.getAsDouble();
+            store(stock, analysis, days, generation, result);
+        }
+        return result;
+    }
+
+
+    /**
+     * Calculates the given analyses of a valid stock ticker in the given time periods. Cached results are
+     * returned at once, otherwise the price history is loaded once and all results are cached.
+     * @param analyses the analyses to be performed
+     * @param stock the stock ticker to analyze
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     * @return the results for each analysis, in the same order as the given time periods; null if the stock is
+     * invalid or has no data
+     */
+    @Override
+    public Map<Analyses, double[]> analyze(Set<Analyses> analyses, String stock, int... days) {
+        long generation = generation(stock);
+        if (!isAvailable(stock)) {
+            return null;
+        }
+
+        // Look up all results, stopping at the first missing one
+        Map<Analyses, double[]> results = new EnumMap<>(Analyses.class);
+        for (Analyses analysis : analyses) {
+            double[] values = new double[days.length];
+            for (int i = 0; i < days.length; i++) {
+                Double result = cache.get(stock, analysis, days[i]);
+                if (result == null) {
+                    return calculate(analyses, stock, generation, days);
+                }
+                values[i] = result;
+            }
+            results.put(analysis, values);
+        }
+        return results;
+    }
+
+
+    /**
+     * Calculates the given analyses with the storage and caches all results.
+     * @param analyses the analyses to be performed
+     * @param stock the stock ticker to analyze
+     * @param generation the generation of the stock before the cache was looked up
+     * @param days the time periods to be analyzed in
+     * @return the results for each analysis, null if the stock is invalid or has no data
+     */
+    private Map<Analyses, double[]> calculate(Set<Analyses> analyses, String stock, long generation, int... days) {
+        Map<Analyses, double[]> results = storageHandler.analyze(analyses, stock, days);
+        if (results != null) {
+            for (Map.Entry<Analyses, double[]> result : results.entrySet()) {
+                for (int i = 0; i < days.length; i++) {
+                    store(stock, result.getKey(), days[i], generation, result.getValue()[i]);
+                }
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * Gets the number of times the results of a stock were dropped, so that results calculated meanwhile are
+     * not cached.
+     * @param stock the stock ticker
+     * @return the generation of the stock
+     */
+    private long generation(String stock) {
+        return generations.getOrDefault(stock, 0L);
+    }
+
+
+    /**
+     * Caches a result, unless the stock was invalidated while it was calculated.
+     * @param stock the stock ticker
+     * @param analysis the analysis
+     * @param days the time period
+     * @param generation the generation of the stock before the result was calculated
+     * @param result the result
+     */
+    private void store(String stock, Analyses analysis, int days, long generation, double result) {
+        synchronized (cache) {
+            if (generation(stock) == generation) {
+                cache.put(stock, analysis, days, result);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the result cache, such as to read its hit rate.
+     * @return the result cache
+     */
+    public ResultCache getCache() {
+        return cache;
+    }
+
+
+    /**
+     * Drops all cached results and closes the storage.
+     */
+    @Override
+    public void close() {
+        cache.clear();
+        generations.clear();
+        storageHandler.close();
+    }
+
+}
@@ -0,0 +1,21 @@
+package analysis.handlers;
+
+import java.sql.SQLException;
+
+/**
+ * An interface for receiving the rows of a .csv file in chunks while it is streamed by CsvSplitter, such as to
+ * write them to a staging table without holding the whole file in memory.
+ */
+@FunctionalInterface
+public interface ChunkReceiver {
+
+    /**
+     * Receives a chunk of parsed rows, on the thread that streams the file. Chunks of different ranges of the
+     * file arrive in any order, while rows within a chunk are in file order.
+     * @param rows the rows of the chunk, which are not used by the splitter anymore
+     * @param bytes the number of bytes of the file parsed into the chunk
+     * @throws SQLException if the rows cannot be written, which stops streaming
+     */
+    void receive(PriceRows rows, long bytes) throws SQLException;
+
+}
@@ -0,0 +1,228 @@
+package analysis.handlers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A class that keeps a bounded number of long-lived connections to the specified database. Connections are
+ * opened on demand and returned to the pool when closed. Each connection caches its prepared statements per
+ * stock ticker, so that the SQL of an analysis is only parsed once per connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final int size;
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> connections = new ArrayList<>();
+    private final Map<String, Integer> versions = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+
+    /**
+     * A class that keeps a bounded number of long-lived connections to the specified database.
+     * @param url the url from the database
+     * @param size the maximum number of open connections
+     */
+    public ConnectionPool(String url, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.url = url;
+        this.size = size;
+        this.idle = new LinkedBlockingQueue<>(size);
+    }
+
+
+    /**
+     * Takes a connection from the pool, opening a new one if the pool is not yet full, or waiting for one
+     * to be returned otherwise. The connection must be closed to return it to the pool.
+     * @return a connection to the database
+     * @throws SQLException if a database access error occurs, or the pool is closed
+     */
+    public PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        // Reuse an idle connection if possible
+        PooledConnection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+
+        // Open a new connection while the pool is not full
+        synchronized (connections) {
+            if (connections.size() < size) {
+                Connection sqlConnection = DriverManager.getConnection(url);
+                SqlFunctions.register(sqlConnection); // Make the analysis functions available to all queries
+                connection = new PooledConnection(sqlConnection);
+                connections.add(connection);
+                return connection;
+            }
+        }
+
+        // Wait for a connection to be returned otherwise
+        try {
+            return idle.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+
+    /**
+     * Invalidates the cached prepared statements of a stock ticker on all connections, e.g. after its table
+     * was recreated. Statements are closed and prepared again the next time they are used.
+     * @param stock the stock ticker whose statements are outdated
+     */
+    public void invalidate(String stock) {
+        versions.merge(stock, 1, Integer::sum);
+    }
+
+
+    /**
+     * Closes all connections of the pool together with their cached statements.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (connections) {
+            for (PooledConnection connection : connections) {
+                connection.closeAll();
+            }
+            connections.clear();
+        }
+        idle.clear();
+    }
+
+
+    /**
+     * A connection from the pool, which caches its prepared statements per stock ticker.
+     */
+    public class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, Map<String, PreparedStatement>> statements = new HashMap<>();
+        private final Map<String, Integer> seenVersions = new HashMap<>();
+        private final Set<String> checked = new HashSet<>();
+
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+
+        /**
+         * Gets the underlying database connection.
+         * @return the database connection
+         */
+        public Connection connection() {
+            return connection;
+        }
+
+
+        /**
+         * Gets a prepared statement for the given SQL of a stock ticker, preparing it only on first use.
+         * @param stock the stock ticker the statement refers to
+         * @param sql the SQL of the statement
+         * @return the cached prepared statement
+         * @throws SQLException if a database access error occurs
+         */
+        public PreparedStatement prepare(String stock, String sql) throws SQLException {
+            // Drop statements prepared before the ticker was invalidated, once per use of the connection, so
+            // that statements already handed out stay open if the ticker is invalidated meanwhile
+            if (checked.add(stock)) {
+                Integer version = versions.get(stock);
+                if (!Objects.equals(version, seenVersions.get(stock))) {
+                    closeStatements(statements.remove(stock));
+                    seenVersions.put(stock, version);
+                }
+            }
+
+            Map<String, PreparedStatement> tickerStatements =
+                    statements.computeIfAbsent(stock, k -> new HashMap<>());
+            PreparedStatement statement = tickerStatements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                tickerStatements.put(sql, statement);
+            }
+            return statement;
+        }
+
+
+        /**
+         * Returns the connection to the pool, rolling back any transaction left open.
+         */
+        @Override
+        public void close() {
+            checked.clear();
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+            catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+
+            if (closed) {
+                closeAll();
+            } else {
+                idle.offer(this);
+            }
+        }
+
+
+        /**
+         * Closes all cached statements and the underlying connection.
+         */
+        private void closeAll() {
+            for (Map<String, PreparedStatement> tickerStatements : statements.values()) {
+                closeStatements(tickerStatements);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+
+        /**
+         * Closes the given statements, if any.
+         * @param tickerStatements the statements to close, may be null
+         */
+        private void closeStatements(Map<String, PreparedStatement> tickerStatements) {
+            if (tickerStatements == null) {
+                return;
+            }
+            for (PreparedStatement statement : tickerStatements.values()) {
+                try {
+                    statement.close();
+                }
+                catch (SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+
+    }
+
+}
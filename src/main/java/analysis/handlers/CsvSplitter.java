@@ -0,0 +1,414 @@
+package analysis.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A class that parses a single large .csv file on several threads. The file is split into byte ranges that
+ * start and end at line breaks, each range is read with positional reads of a shared file channel and parsed
+ * on its own. Rows are written to the storage in date order whatever their order in the file, so a single file
+ * can use every core without changing what is written. Files can either be parsed into memory at once, with the
+ * parsed ranges concatenated in file order, or be streamed in chunks of bounded size to a ChunkReceiver.
+ */
+public class CsvSplitter {
+
+    /**
+     * Files smaller than this are parsed on a single thread, and ranges are never smaller than this (64 MiB)
+     */
+    static final long MIN_RANGE_SIZE = 64L * 1024 * 1024;
+
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+
+    private CsvSplitter() {
+    }
+
+
+    /**
+     * Parses the data from the csv file into primitive columns, splitting files of at least two ranges of
+     * MIN_RANGE_SIZE across the common fork-join pool. All kept rows are held in memory at once, taking about
+     * 48 bytes per row and as much again while the ranges are concatenated, so files that may not fit into the
+     * heap should be streamed instead.
+     * @param file the source csv file
+     * @param fromDay the first date to keep, in epoch days; earlier rows are skipped
+     * @return the parsed rows, in file order
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static PriceRows parse(File file, int fromDay) throws IOException {
+        int ranges = (int) Math.min(ForkJoinPool.getCommonPoolParallelism(), file.length() / MIN_RANGE_SIZE);
+        if (ranges < 2) {
+            return PriceRows.parse(file.getPath(), fromDay);
+        }
+        return parse(file, fromDay, ranges);
+    }
+
+
+    /**
+     * Parses the data from the csv file into primitive columns, splitting it into the given number of ranges
+     * which are parsed concurrently on the common fork-join pool. All kept rows are held in memory at once.
+     * @param file the source csv file
+     * @param fromDay the first date to keep, in epoch days; earlier rows are skipped
+     * @param ranges the number of ranges to split the file into
+     * @return the parsed rows, in file order
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static PriceRows parse(File file, int fromDay, int ranges) throws IOException {
+        if (ranges <= 0) {
+            throw new IllegalArgumentException("Ranges must be positive: " + ranges);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Split after the header line, at line breaks
+            long[] bounds = split(channel, ranges);
+
+            // Parse each range on its own, as a single chunk
+            List<Callable<List<PriceRows>>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                if (start < end) {
+                    tasks.add(() -> {
+                        List<PriceRows> chunks = new ArrayList<>();
+                        parseRange(channel, start, end, fromDay, file.getPath(), Integer.MAX_VALUE,
+                                (rows, bytes) -> chunks.add(rows));
+                        return chunks;
+                    });
+                }
+            }
+
+            // Concatenate the parsed ranges in file order
+            PriceRows rows = new PriceRows();
+            for (Future<List<PriceRows>> task : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                for (PriceRows chunk : task.get()) {
+                    rows.addAll(chunk);
+                }
+            }
+            return rows;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(file.getPath() + ": interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw failure(e, file.getPath());
+        }
+    }
+
+
+    /**
+     * Streams the data from the csv file in chunks of rows, splitting files of at least two ranges of
+     * MIN_RANGE_SIZE so that they are parsed concurrently, see the stream method with a given number of ranges.
+     * @param file the source csv file
+     * @param fromDay the first date to keep, in epoch days; earlier rows are skipped
+     * @param rowsPerChunk the most rows of a chunk
+     * @param receiver receives the chunks on the calling thread
+     * @throws IOException if the file cannot be read or parsed
+     * @throws SQLException if the receiver cannot write a chunk
+     */
+    public static void stream(File file, int fromDay, int rowsPerChunk, ChunkReceiver receiver)
+            throws IOException, SQLException {
+        int ranges = (int) Math.min(ForkJoinPool.getCommonPoolParallelism(), file.length() / MIN_RANGE_SIZE);
+        stream(file, fromDay, Math.max(ranges, 1), rowsPerChunk, receiver);
+    }
+
+
+    /**
+     * Streams the data from the csv file in chunks of rows, splitting it into the given number of ranges which
+     * are parsed concurrently, each on its own thread, while the calling thread hands the chunks to the receiver
+     * as they arrive. Parsing waits while the receiver is behind, so that at most two chunks per range and the
+     * chunk being received are held in memory, whatever the size of the file.
+     * @param file the source csv file
+     * @param fromDay the first date to keep, in epoch days; earlier rows are skipped
+     * @param ranges the number of ranges to split the file into
+     * @param rowsPerChunk the most rows of a chunk
+     * @param receiver receives the chunks on the calling thread, in any order of their ranges
+     * @throws IOException if the file cannot be read or parsed
+     * @throws SQLException if the receiver cannot write a chunk
+     */
+    public static void stream(File file, int fromDay, int ranges, int rowsPerChunk, ChunkReceiver receiver)
+            throws IOException, SQLException {
+        if (ranges <= 0 || rowsPerChunk <= 0) {
+            throw new IllegalArgumentException("Ranges and rows per chunk must be positive: "
+                    + ranges + ", " + rowsPerChunk);
+        }
+        ExecutorService parsers = Executors.newFixedThreadPool(ranges);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Split after the header line, at line breaks
+            long[] bounds = split(channel, ranges);
+
+            // Parse ranges concurrently, handing chunks to the calling thread through a bounded queue
+            BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>(ranges);
+            for (int i = 0; i < ranges; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                parsers.execute(() -> {
+                    IOException failure = null;
+                    try {
+                        parseRange(channel, start, end, fromDay, file.getPath(), rowsPerChunk,
+                                (rows, bytes) -> chunks.put(new Chunk(rows, bytes, null)));
+                    }
+                    catch (IOException e) {
+                        failure = e;
+                    }
+                    catch (RuntimeException e) {
+                        // Always end the range, so that the calling thread does not wait for it forever
+                        failure = new IOException(file.getPath() + ": " + e.getMessage(), e);
+                    }
+                    catch (InterruptedException e) {
+                        // Streaming stopped
+                        return;
+                    }
+                    try {
+                        // Mark the end of the range
+                        chunks.put(new Chunk(null, 0, failure));
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            // Receive chunks as they arrive, until every range ended
+            int ended = 0;
+            while (ended < ranges) {
+                Chunk chunk = chunks.take();
+                if (chunk.failure != null) {
+                    throw chunk.failure;
+                }
+                if (chunk.rows == null) {
+                    ended++;
+                } else {
+                    receiver.receive(chunk.rows, chunk.bytes);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(file.getPath() + ": interrupted", e);
+        }
+        finally {
+            // Stop ranges still parsing after a failure
+            parsers.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Gets the exception of a failed range, which the executor wraps.
+     * @param e the exception thrown when getting the result of the range
+     * @param path the path of the file, for error messages
+     * @return the exception to be thrown
+     */
+    private static IOException failure(ExecutionException e, String path) {
+        Throwable cause = e.getCause();
+        while (!(cause instanceof IOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(path + ": " + cause.getMessage(), cause);
+    }
+
+
+    /**
+     * Splits the rows of a file into byte ranges of about the same size, each one starting after a line break.
+     * @param channel the channel of the file
+     * @param ranges the number of ranges
+     * @return the bounds of the ranges, from the start of the first row to the end of the file; ranges may be
+     * empty if lines are longer than a range
+     * @throws IOException if the file cannot be read
+     */
+    static long[] split(FileChannel channel, int ranges) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[ranges + 1];
+        bounds[0] = nextLine(channel, 0);
+        for (int i = 1; i < ranges; i++) {
+            long tentative = bounds[0] + (size - bounds[0]) * i / ranges;
+            bounds[i] = Math.max(bounds[i - 1], nextLine(channel, tentative));
+        }
+        bounds[ranges] = size;
+        return bounds;
+    }
+
+
+    /**
+     * Finds the start of the line after the given position.
+     * @param channel the channel of the file
+     * @param position the position to search from
+     * @return the position after the next line break, or the size of the file if there is none
+     * @throws IOException if the file cannot be read
+     */
+    private static long nextLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+
+    /**
+     * Parses the rows of a byte range of a file in chunks.
+     * @param channel the channel of the file, shared by all ranges
+     * @param start the position of the first row
+     * @param end the position after the last row
+     * @param fromDay the first date to keep, in epoch days
+     * @param path the path of the file, for error messages
+     * @param rowsPerChunk the most rows of a chunk
+     * @param sink receives every full chunk, then the remaining rows even if there are none, with the bytes of
+     *             the range read for them
+     * @throws IOException if the range cannot be read or parsed
+     * @throws InterruptedException if interrupted while handing over a chunk
+     */
+    private static void parseRange(FileChannel channel, long start, long end, int fromDay, String path,
+                                   int rowsPerChunk, RangeSink sink) throws IOException, InterruptedException {
+        RangeInputStream input = new RangeInputStream(channel, start, end);
+        long handed = start;
+        PriceRows rows = new PriceRows();
+        try (Reader reader = new InputStreamReader(input)) {
+            OhlcvParser parser = new OhlcvParser(reader, false);
+            while (parser.next()) {
+                if (parser.day() < fromDay) {
+                    continue;
+                }
+                rows.add(parser.day(), parser.open(), parser.high(), parser.low(), parser.close(),
+                        parser.volume());
+                if (rows.size() == rowsPerChunk) {
+                    sink.accept(rows, input.position - handed);
+                    handed = input.position;
+                    rows = new PriceRows();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IOException(path + " (from byte " + start + "): " + e.getMessage(), e);
+        }
+        sink.accept(rows, end - handed);
+    }
+
+
+    /**
+     * A receiver of the chunks of a range while it is parsed.
+     */
+    private interface RangeSink {
+
+        void accept(PriceRows rows, long bytes) throws InterruptedException;
+
+    }
+
+
+    /**
+     * A chunk of parsed rows, or the end of a range if it has no rows.
+     */
+    private static class Chunk {
+
+        private final PriceRows rows;
+        private final long bytes;
+        private final IOException failure;
+
+
+        private Chunk(PriceRows rows, long bytes, IOException failure) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.failure = failure;
+        }
+
+    }
+
+
+    /**
+     * An input stream of a byte range of a file channel, reading with positional reads so that the channel can
+     * be shared by several threads.
+     */
+    private static class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final long end;
+        private long position;
+
+
+        private RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            buffer.limit(0);
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+
+        /**
+         * Reads the next bytes of the range into the buffer, if it is empty.
+         * @return true if bytes are available, false at the end of the range
+         * @throws IOException if the file cannot be read
+         */
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return false;
+            }
+            position += read;
+            buffer.flip();
+            return true;
+        }
+
+    }
+
+}
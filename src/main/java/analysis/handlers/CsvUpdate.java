@@ -0,0 +1,90 @@
+package analysis.handlers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * A class that holds the rows of a .csv file which still have to be written to the storage for a stock,
+ * together with the information needed to record the ingestion.
+ */
+public class CsvUpdate {
+
+    private final String stock;
+    private final String checksum;
+    private final Integer fromDay;
+    private final PriceRows rows;
+
+
+    /**
+     * A class that holds the rows of a .csv file which still have to be written to the database for a stock.
+     * @param stock the stock ticker of the file
+     * @param checksum the checksum of the file
+     * @param fromDay the first date to be replaced, in epoch days, or null if all data of the stock is replaced
+     * @param rows the parsed rows on or after the first date
+     */
+    CsvUpdate(String stock, String checksum, Integer fromDay, PriceRows rows) {
+        this.stock = stock;
+        this.checksum = checksum;
+        this.fromDay = fromDay;
+        this.rows = rows;
+    }
+
+
+    /**
+     * Gets the stock ticker of the file.
+     * @return the stock ticker
+     */
+    public String stock() {
+        return stock;
+    }
+
+
+    /**
+     * Gets the checksum of the file.
+     * @return the checksum
+     */
+    public String checksum() {
+        return checksum;
+    }
+
+
+    /**
+     * Gets the first date to be replaced.
+     * @return the first date in epoch days, or null if all data of the stock is replaced
+     */
+    public Integer fromDay() {
+        return fromDay;
+    }
+
+
+    /**
+     * Gets the parsed rows.
+     * @return the rows on or after the first date
+     */
+    public PriceRows rows() {
+        return rows;
+    }
+
+
+    /**
+     * Calculates the checksum of a file, reading it sequentially.
+     * @param file the file
+     * @return the CRC32C checksum and length of the file
+     * @throws IOException if the file cannot be read
+     */
+    static String checksum(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return Long.toHexString(crc.getValue()) + ":" + file.length();
+    }
+
+}
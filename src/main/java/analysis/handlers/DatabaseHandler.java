@@ -1,138 +1,1394 @@
 package analysis.handlers;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import analysis.indicators.ArrayPriceSeries;
+import analysis.indicators.OffHeapPriceSeries;
+import analysis.indicators.PriceSeries;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 
 /**
- * A class that handles all operations to the specified database.
+ * A class that handles all operations to the specified database. Connections are kept open in a pool for
+ * the lifetime of the handler, so the handler should be closed when it is no longer needed. The database uses
+ * write-ahead logging, so analyses can run while an update is written, reading the data from before the
+ * update until it is committed.
  */
-public class DatabaseHandler {
+public class DatabaseHandler implements StorageHandler {
 
-    private final String url;
+    /**
+     * Name of the single prices table used by the unified storage mode
+     */
+    static final String PRICES_TABLE = "prices";
+
+    /**
+     * Name of the table tracking the last ingested version of each stock's .csv file
+     */
+    static final String INGEST_STATE_TABLE = "ingest_state";
+
+    /**
+     * Names of tables used internally, which never denote a stock ticker
+     */
+    static final Set<String> INTERNAL_TABLES = Set.of(PRICES_TABLE, INGEST_STATE_TABLE);
+
+    /**
+     * Prefix of the tables that replaced data of a stock is written into, before being swapped in
+     */
+    static final String STAGING_PREFIX = "staging_";
+
+    /**
+     * Prefix of the tables SQLite reserves for itself
+     */
+    private static final String SQLITE_PREFIX = "sqlite_";
+
+    /**
+     * Stock tickers that can name a table without quoting
+     */
+    private static final Pattern TICKER = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    /**
+     * Columns holding the number of rows of a stock up to and including each row, in date order, and the sum
+     * and the sum of squares of their Close prices minus the reference price, which is the Close price of the
+     * first row of the stock. Summing the deviations instead of the prices keeps the sums small, so that
+     * subtracting them over a time period loses less precision.
+     */
+    static final String CUMULATIVE_COLUMNS = "CumRows INTEGER, CumDelta REAL, CumDeltaSq REAL";
+
+    /**
+     * Columns that held the cumulative sums of Close prices themselves, in databases written by earlier versions
+     */
+    private static final List<String> LEGACY_CUMULATIVE_COLUMNS = List.of("CumRows", "CumClose", "CumCloseSq");
+
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * Rows inserted between commits while bulk loading
+     */
+    private static final int BULK_ROWS_PER_COMMIT = 50_000;
+
+    /**
+     * Page cache while bulk loading, in KiB as SQLite takes negative sizes (256 MiB)
+     */
+    private static final long BULK_CACHE_SIZE = -262_144;
+
+    /**
+     * Memory-mapped size of the database file while bulk loading, in bytes (1 GiB)
+     */
+    private static final long BULK_MMAP_SIZE = 1L << 30;
+
+    private final ConnectionPool pool;
+    private final StorageMode mode;
+    private final TickerRegistry registry = new TickerRegistry();
+    private final Map<String, IngestState> ingestStates = new ConcurrentHashMap<>();
+    private final Set<String> deferredIndexes = ConcurrentHashMap.newKeySet();
+    private final List<UpdateListener> listeners = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * A class that handles all operations to the specified database, storing one table per stock ticker.
+     * @param url the url from the database
+     */
+    public DatabaseHandler(String url) {
+        this(url, StorageMode.PER_TICKER);
+    }
+
+
+    /**
+     * A class that handles all operations to the specified database.
+     * @param url the url from the database
+     * @param mode the layout of the stock prices in the database
+     */
+    public DatabaseHandler(String url, StorageMode mode) {
+        this(url, mode, POOL_SIZE);
+    }
+
+
+    /**
+     * A class that handles all operations to the specified database.
+     * @param url the url from the database
+     * @param mode the layout of the stock prices in the database
+     * @param poolSize the maximum number of open connections to the database
+     */
+    public DatabaseHandler(String url, StorageMode mode, int poolSize) {
+        this.pool = new ConnectionPool(url, poolSize);
+        this.mode = mode;
+
+        try (ConnectionPool.PooledConnection connection = pool.acquire()) {
+            // Write-ahead logging keeps readers and the single writer from blocking each other, and persists
+            try (Statement statement = connection.connection().createStatement()) {
+                statement.execute("PRAGMA journal_mode = WAL");
+            }
+
+            // Make sure the prices and ingestion state tables exist before they are queried
+            if (mode == StorageMode.UNIFIED) {
+                createPricesTable(connection.connection());
+            }
+            createIngestStateTable(connection.connection());
+
+            // Load available stock tickers and ingestion states once, updates keep them up to date afterwards
+            registry.load(connection.connection(), mode);
+            ingestStates.putAll(readIngestStates(connection.connection()));
+
+            // Add the cumulative sums to tables written before they existed
+            addCumulativeSums(connection.connection());
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Reads the rows of a .csv file that still have to be written to the database. Files whose checksum matches
+     * the last ingested version are skipped. Otherwise, only rows on or after the last ingested date are kept,
+     * since files are expected to only grow by appending new dates. Stocks without ingestion history are read
+     * completely and get a new table, overwriting an already existing table with the same name, or have all
+     * their rows replaced in unified storage mode. Does not access the database, so that files can be parsed
+     * concurrently. Large files are also split into ranges which are parsed concurrently, see CsvSplitter.
+     * @param file .csv file to be read from
+     * @return the update to be written, null if the file is unchanged
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws IllegalArgumentException if the name of the file does not denote a valid stock ticker
+     */
+    @Override
+    public CsvUpdate prepareUpdate(File file) {
+        String stock = tickerOf(file);
+        IngestState state = registry.contains(stock) ? ingestStates.get(stock) : null;
+        try {
+            // Skip unchanged files
+            String checksum = CsvUpdate.checksum(file);
+            if (state != null && state.checksum.equals(checksum)) {
+                return null;
+            }
+
+            // Append from the last ingested date if there is one, replace everything otherwise
+            Integer fromDay = state == null || state.lastDay == Integer.MIN_VALUE ? null : state.lastDay;
+            PriceRows rows = CsvSplitter.parse(file, fromDay == null ? Integer.MIN_VALUE : fromDay);
+            return new CsvUpdate(stock, checksum, fromDay, rows);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Gets the stock ticker of a .csv file, making sure that it can name a table and does not collide with the
+     * tables used internally, their staging tables, or those of SQLite, before any SQL statement uses it.
+     * @param file the .csv file
+     * @return the stock ticker
+     * @throws IllegalArgumentException if the name of the file does not denote a valid stock ticker
+     */
+    private static String tickerOf(File file) {
+        String stock = StorageHandler.stockOf(file);
+        if (!TICKER.matcher(stock).matches() || INTERNAL_TABLES.contains(stock) || stock.startsWith(STAGING_PREFIX)
+                || stock.startsWith(SQLITE_PREFIX)) {
+            throw new IllegalArgumentException("Not a valid stock ticker: " + file.getName());
+        }
+        return stock;
+    }
+
+
+    /**
+     * Ingests the given .csv files through an IngestionPipeline with the bulk-load profile, such as for a full
+     * historical reload. While loading, writes relax synchronization, use a large page cache and memory
+     * mapping, commit in chunks of rows instead of once per write, and leave the date indexes of recreated tables
+     * to be built once all rows are loaded. Afterwards, the indexes are built, the write-ahead log is
+     * checkpointed, and connections are back to their previous profile. Each file is committed on its own, and
+     * its stock becomes available once all its rows are loaded. Only the writes of this method use the profile,
+     * so that other writes meanwhile keep their own.
+     * @param files the .csv files to be read from
+     * @param parallelism the number of threads parsing files
+     * @return for each file in the given order, whether data from it was written, it is unchanged, or it could
+     *         not be ingested
+     */
+    public Map<File, UpdateResult> bulkLoad(List<File> files, int parallelism) {
+        try {
+            return new IngestionPipeline(this, parallelism, updates -> writeUpdates(updates, true), 0).run(files);
+        }
+        finally {
+            finishBulkLoad();
+        }
+    }
+
+
+    /**
+     * Builds the indexes deferred while bulk loading and checkpoints the write-ahead log into the database.
+     */
+    private void finishBulkLoad() {
+        try (
+                ConnectionPool.PooledConnection connection = pool.acquire();
+                Statement statement = connection.connection().createStatement()
+        ) {
+            for (String stock : deferredIndexes) {
+                // The table of a stock whose update was rolled back does not exist, unless it was available before
+                if (registry.contains(stock)) {
+                    statement.executeUpdate(dateIndex(stock));
+                }
+                deferredIndexes.remove(stock);
+            }
+            statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            statement.execute("PRAGMA optimize");
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Writes the given updates to the database in a single transaction, together with their ingestion states.
+     * Must only be called by one thread at a time, since SQLite allows a single writer.
+     * @param updates the updates to be written
+     * @return true if the updates were written, false if a database access error occurred
+     */
+    @Override
+    public boolean writeUpdates(List<CsvUpdate> updates) {
+        return writeUpdates(updates, false);
+    }
+
+
+    /**
+     * Writes the given updates to the database, together with their ingestion states. Unless bulk loading, they
+     * are written in a single transaction. While bulk loading, the connection uses the bulk-load profile, and
+     * rows are committed in chunks into staging tables, which are only swapped in with the ingestion state of
+     * their stock, so that analyses never see a partly written stock, and a partly written stock is written again
+     * by the next update. Since a chunk commit would also commit the updates written before it, each update is
+     * then committed on its own and made available at once, and a failed update leaves the updates before it
+     * written.
+     * @param updates the updates to be written
+     * @param bulk whether to write with the bulk-load profile, committing in chunks and per update
+     * @return true if the updates were written, false if a database access error occurred
+     */
+    private boolean writeUpdates(List<CsvUpdate> updates, boolean bulk) {
+        List<String> recreated = new ArrayList<>();
+        Map<String, IngestState> written = new HashMap<>();
+        try (
+                // Connect to database
+                ConnectionPool.PooledConnection pooledConnection = pool.acquire()
+        ) {
+            Connection connection = pooledConnection.connection();
+            long[] profile = bulk ? useBulkProfile(connection) : null;
+            try {
+                // Write new rows and the ingestion states in the same transaction
+                connection.setAutoCommit(false);
+                for (CsvUpdate update : updates) {
+                    int lastDay;
+                    if (update.fromDay() == null) {
+                        replaceRows(connection, update, bulk);
+                        if (mode != StorageMode.UNIFIED) {
+                            recreated.add(update.stock());
+                        }
+                        lastDay = Integer.MIN_VALUE;
+                    } else {
+                        appendRows(connection, update, bulk);
+                        lastDay = update.fromDay();
+                    }
+                    for (int i = 0; i < update.rows().size(); i++) {
+                        lastDay = Math.max(lastDay, update.rows().day(i));
+                    }
+                    writeIngestState(connection, update.stock(), update.checksum(), lastDay);
+                    written.put(update.stock(), new IngestState(update.checksum(), lastDay));
+
+                    // Commit a stock swapped in while bulk loading before the chunks of the next one
+                    if (bulk) {
+                        connection.commit();
+                        publish(written);
+                        written.clear();
+                    }
+                }
+                connection.commit();
+            }
+            finally {
+                // Drop what was not committed, and hand the connection back as it was
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                if (profile != null) {
+                    restoreProfile(connection, profile);
+                }
+            }
+
+            publish(written);
+            return true;
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        finally {
+            // Statements prepared against the old tables are outdated
+            for (String stock : recreated) {
+                pool.invalidate(stock);
+            }
+        }
+    }
+
+
+    /**
+     * Makes committed stocks available with their new ingestion states, and notifies the listeners of them.
+     * @param written the ingestion states of the committed stocks
+     */
+    private void publish(Map<String, IngestState> written) {
+        ingestStates.putAll(written);
+        for (String stock : written.keySet()) {
+            registry.add(stock);
+            notifyUpdated(stock);
+        }
+    }
+
+
+    /**
+     * Ingests a single .csv file of any size with bounded memory, skipping it if it is unchanged. Unlike
+     * prepareUpdate and writeUpdates, which hold all rows of a file at once, rows are streamed from the file
+     * into batches of the given size by CsvSplitter, which parses large files on several threads, and committed
+     * every given number of rows. At most two batches per parsing thread are held in memory. The cumulative
+     * sums of the staged rows are calculated by the database once all rows are written, since .csv files list
+     * the most recent date first, continuing from the most recent kept row. Rows are streamed into a staging
+     * table, which is swapped in once the file is written completely,
+     * so that analyses keep reading the previous data until then. The stock only becomes available, or changes
+     * its ingestion state, at that point, and a partly written file is written again by the next update. Must
+     * only be called by one thread at a time, like writeUpdates.
+     * @param file .csv file to be read from
+     * @param rowsPerBatch the rows sent to the database at once
+     * @param rowsPerTransaction the rows written between commits, rounded up to whole batches
+     * @param progress receives the progress after every batch, or null
+     * @return whether data from the file was written, the file is unchanged, or the file could not be ingested
+     * @throws IllegalArgumentException if the rows are not positive, or the name of the file does not denote a
+     *                                  valid stock ticker
+     */
+    public UpdateResult streamUpdate(File file, int rowsPerBatch, int rowsPerTransaction,
+                                     IngestProgress progress) {
+        if (rowsPerBatch <= 0 || rowsPerTransaction <= 0) {
+            throw new IllegalArgumentException("Rows per batch and transaction must be positive: "
+                    + rowsPerBatch + ", " + rowsPerTransaction);
+        }
+        String stock = tickerOf(file);
+        IngestState state = registry.contains(stock) ? ingestStates.get(stock) : null;
+        boolean recreated = false;
+
+        try (
+                // Connect to database
+                ConnectionPool.PooledConnection pooledConnection = pool.acquire()
+        ) {
+            // Skip unchanged files
+            String checksum = CsvUpdate.checksum(file);
+            if (state != null && state.checksum.equals(checksum)) {
+                return UpdateResult.UNCHANGED;
+            }
+            Connection connection = pooledConnection.connection();
+            long totalBytes = file.length();
+
+            try {
+                // Append from the last ingested date if there is one, replace everything otherwise
+                connection.setAutoCommit(false);
+                Integer replacedFrom = state == null || state.lastDay == Integer.MIN_VALUE ? null : state.lastDay;
+                int fromDay = replacedFrom == null ? Integer.MIN_VALUE : replacedFrom;
+                String staging = createStagingTable(connection, stock);
+
+                // Stream rows into batches, leaving the cumulative sums empty for now
+                StagedRows staged;
+                try (PreparedStatement statement = connection.prepareStatement(insertStatement(staging))) {
+                    staged = new StagedRows(connection, statement, stock, fromDay, rowsPerTransaction, totalBytes,
+                            progress);
+                    CsvSplitter.stream(file, fromDay, rowsPerBatch, staged);
+                }
+                int lastDay = staged.lastDay;
+                long rows = staged.rows;
+
+                // Sum up the staged rows in date order, then swap in and record the ingestion in one transaction
+                KeptSums kept = keptSums(connection, stock, replacedFrom);
+                String ticker = mode == StorageMode.UNIFIED ? stock : null;
+                rebuildCumulativeSums(connection, staging, dateColumn(), ticker, kept);
+                swapIn(connection, stock, replacedFrom, false);
+                recreated = replacedFrom == null && mode != StorageMode.UNIFIED;
+                writeIngestState(connection, stock, checksum, lastDay);
+                connection.commit();
+                if (progress != null) {
+                    progress.update(stock, rows, totalBytes, totalBytes);
+                }
+
+                // Make the stock available with its new ingestion state
+                publish(Map.of(stock, new IngestState(checksum, lastDay)));
+                return UpdateResult.WRITTEN;
+            }
+            finally {
+                // Drop what was not committed, and hand the connection back as it was
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+        }
+        catch (SQLException | IOException e) {
+            System.out.println(file.getName() + ": " + e.getMessage());
+            return UpdateResult.FAILED;
+        }
+        finally {
+            // Statements prepared against the old table are outdated
+            if (recreated) {
+                pool.invalidate(stock);
+            }
+        }
+    }
+
+
+    /**
+     * Switches a connection to the bulk-load profile.
+     * @param connection the database connection
+     * @return the previous synchronous mode, page cache size and memory-mapped size, to restore afterwards
+     * @throws SQLException if a database access error occurs
+     */
+    private long[] useBulkProfile(Connection connection) throws SQLException {
+        long[] profile = {pragma(connection, "synchronous"), pragma(connection, "cache_size"),
+                pragma(connection, "mmap_size")};
+        try (Statement statement = connection.createStatement()) {
+            // With write-ahead logging, a crash may lose the last commits, but never corrupts the database
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("PRAGMA cache_size = " + BULK_CACHE_SIZE);
+            statement.execute("PRAGMA mmap_size = " + BULK_MMAP_SIZE);
+        }
+        return profile;
+    }
+
+
+    /**
+     * Restores the profile of a connection from before useBulkProfile.
+     * @param connection the database connection
+     * @param profile the synchronous mode, page cache size and memory-mapped size to restore
+     * @throws SQLException if a database access error occurs
+     */
+    private void restoreProfile(Connection connection, long[] profile) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA synchronous = " + profile[0]);
+            statement.execute("PRAGMA cache_size = " + profile[1]);
+            statement.execute("PRAGMA mmap_size = " + profile[2]);
+        }
+    }
+
+
+    /**
+     * Reads the numeric value of a pragma of a connection.
+     * @param connection the database connection
+     * @param name the name of the pragma
+     * @return the value of the pragma
+     * @throws SQLException if a database access error occurs
+     */
+    private static long pragma(Connection connection, String name) throws SQLException {
+        try (
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("PRAGMA " + name)
+        ) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+
+    /**
+     * Replaces all data of a stock with the rows of an update, within the current transaction. The rows are
+     * written into a staging table first, which is then swapped in, so that the table of the stock never
+     * disappears or is partly written for analyses, even while bulk loading commits in chunks.
+     * @param connection the database connection
+     * @param update the update to be written
+     * @param bulk whether to commit in chunks and defer the date index, while bulk loading
+     * @throws SQLException if a database access error occurs
+     */
+    private void replaceRows(Connection connection, CsvUpdate update, boolean bulk) throws SQLException {
+        String stock = update.stock();
+        String staging = createStagingTable(connection, stock);
+        insertRows(connection, staging, stock, null, update.rows(), bulk);
+        swapIn(connection, stock, null, bulk);
+    }
+
+
+    /**
+     * Appends the rows of an update to the data of a stock, within the current transaction. Rows on or after
+     * the first date of the update are replaced, as they may have been incomplete. While bulk loading, the rows
+     * are committed in chunks into a staging table, which is then merged in. Either way, only the cumulative
+     * sums of the new rows are calculated, continuing from the most recent kept row.
+     * @param connection the database connection
+     * @param update the update to be written
+     * @param bulk whether to commit in chunks, while bulk loading
+     * @throws SQLException if a database access error occurs
+     */
+    private void appendRows(Connection connection, CsvUpdate update, boolean bulk) throws SQLException {
+        String stock = update.stock();
+        if (bulk) {
+            String staging = createStagingTable(connection, stock);
+            insertRows(connection, staging, stock, update.fromDay(), update.rows(), true);
+            swapIn(connection, stock, update.fromDay(), true);
+            return;
+        }
+
+        deleteRows(connection, stock, update.fromDay());
+        insertRows(connection, table(stock), stock, update.fromDay(), update.rows(), false);
+    }
+
+
+    /**
+     * Deletes the rows of a stock from the given date on, within the current transaction.
+     * @param connection the database connection
+     * @param stock the stock ticker
+     * @param fromDay the first date to delete, in epoch days; null to delete all rows, only in unified storage
+     *                mode
+     * @throws SQLException if a database access error occurs
+     */
+    private void deleteRows(Connection connection, String stock, Integer fromDay) throws SQLException {
+        String delete = mode == StorageMode.UNIFIED
+                ? "DELETE FROM " + PRICES_TABLE + " WHERE Ticker = ?" + (fromDay == null ? "" : " AND Day >= ?")
+                : "DELETE FROM " + stock + " WHERE " + dateColumn() + " >= ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(delete)) {
+            if (mode == StorageMode.UNIFIED) {
+                statement.setString(1, stock);
+                if (fromDay != null) {
+                    setDay(statement, 2, fromDay);
+                }
+            } else {
+                setDay(statement, 1, fromDay);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+
+    /**
+     * Sets a parameter compared with the date column to a date.
+     * @param statement the prepared statement
+     * @param index the index of the parameter
+     * @param day the date in epoch days
+     * @throws SQLException if a database access error occurs
+     */
+    private void setDay(PreparedStatement statement, int index, int day) throws SQLException {
+        if (mode == StorageMode.PER_TICKER) {
+            statement.setString(index, LocalDate.ofEpochDay(day).toString());
+        } else {
+            statement.setInt(index, day);
+        }
+    }
+
+
+    /**
+     * Creates an empty staging table for a stock, with the layout of its table in the current storage mode,
+     * replacing a staging table left over by an interrupted update. Staging tables are never listed as stocks.
+     * @param connection the database connection
+     * @param stock the stock ticker
+     * @return the name of the staging table
+     * @throws SQLException if a database access error occurs
+     */
+    private String createStagingTable(Connection connection, String stock) throws SQLException {
+        String staging = STAGING_PREFIX + stock;
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE IF EXISTS " + staging);
+            if (mode != StorageMode.UNIFIED) {
+                statement.executeUpdate(createTickerTable(staging));
+            }
+        }
+        if (mode == StorageMode.UNIFIED) {
+            createPricesTable(connection, staging);
+        }
+        return staging;
+    }
+
+
+    /**
+     * Swaps the staging table of a stock in, within the current transaction, and drops it. A per-ticker table
+     * whose data is replaced completely is dropped and the staging table renamed to it, which does not depend on
+     * the number of rows. Otherwise, the rows of the stock from the first staged date on are deleted, and the
+     * staged rows copied in.
+     * @param connection the database connection
+     * @param stock the stock ticker
+     * @param fromDay the first staged date, in epoch days; null if all data of the stock is replaced
+     * @param bulk whether to defer the date index of a replaced table, while bulk loading
+     * @throws SQLException if a database access error occurs
+     */
+    private void swapIn(Connection connection, String stock, Integer fromDay, boolean bulk) throws SQLException {
+        String staging = STAGING_PREFIX + stock;
+        try (Statement statement = connection.createStatement()) {
+            if (fromDay == null && mode != StorageMode.UNIFIED) {
+                statement.executeUpdate("DROP TABLE IF EXISTS " + stock);
+                statement.executeUpdate("ALTER TABLE " + staging + " RENAME TO " + stock);
+                if (mode == StorageMode.PER_TICKER && bulk) {
+                    // Building the index once over all rows is cheaper than maintaining it on every insert
+                    deferredIndexes.add(stock);
+                } else if (mode == StorageMode.PER_TICKER) {
+                    // Index text dates, so that the start and end of a time period are point lookups
+                    statement.executeUpdate(dateIndex(stock));
+                }
+                return;
+            }
+
+            deleteRows(connection, stock, fromDay);
+            statement.executeUpdate("INSERT INTO " + table(stock) + " SELECT * FROM " + staging);
+            statement.executeUpdate("DROP TABLE " + staging);
+        }
+    }
+
+
+    /**
+     * Gets the statement creating a table of a single stock in per-ticker storage mode, keyed by epoch day if
+     * dates are stored as integers.
+     * @param table the name of the table
+     * @return the SQL statement
+     */
+    private String createTickerTable(String table) {
+        return mode == StorageMode.PER_TICKER_EPOCH
+                ? "CREATE TABLE " + table + "(Day INTEGER PRIMARY KEY, Open REAL, High REAL, Low REAL, "
+                        + "Close REAL, Volume REAL, " + CUMULATIVE_COLUMNS + ")"
+                : "CREATE TABLE " + table + "(Date TEXT, Open REAL, High REAL, Low REAL, Close REAL, Volume REAL, "
+                        + CUMULATIVE_COLUMNS + ")";
+    }
+
+
+    /**
+     * Creates the table tracking the ingestion state of each stock and storage mode, if it does not exist yet.
+     * @param connection the database connection
+     * @throws SQLException if a database access error occurs
+     */
+    private void createIngestStateTable(Connection connection) throws SQLException {
+        String create =
+                "CREATE TABLE IF NOT EXISTS " + INGEST_STATE_TABLE + " ("
+                +"    Ticker TEXT NOT NULL,  "
+                +"    Mode TEXT NOT NULL,    "
+                +"    Checksum TEXT NOT NULL,"
+                +"    LastDay INTEGER,       "
+                +"    PRIMARY KEY (Ticker, Mode)"
+                +")";
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(create);
+        }
+    }
+
+
+    /**
+     * Reads the ingestion states of all stocks in the current storage mode.
+     * @param connection the database connection
+     * @return the ingestion states by stock ticker
+     * @throws SQLException if a database access error occurs
+     */
+    private Map<String, IngestState> readIngestStates(Connection connection) throws SQLException {
+        Map<String, IngestState> states = new HashMap<>();
+        String query = "SELECT Ticker, Checksum, LastDay FROM " + INGEST_STATE_TABLE + " WHERE Mode = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, mode.name());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    states.put(resultSet.getString(1),
+                            new IngestState(resultSet.getString(2), resultSet.getInt(3)));
+                }
+            }
+        }
+        return states;
+    }
+
+
+    /**
+     * Writes the ingestion state of a stock in the current storage mode.
+     * @param connection the database connection
+     * @param stock the stock ticker
+     * @param checksum the checksum of the ingested file
+     * @param lastDay the last ingested date, in epoch days
+     * @throws SQLException if a database access error occurs
+     */
+    private void writeIngestState(Connection connection, String stock, String checksum, int lastDay)
+            throws SQLException {
+        String upsert = "INSERT OR REPLACE INTO " + INGEST_STATE_TABLE + " VALUES (?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(upsert)) {
+            statement.setString(1, stock);
+            statement.setString(2, mode.name());
+            statement.setString(3, checksum);
+            statement.setInt(4, lastDay);
+            statement.executeUpdate();
+        }
+    }
+
+
+    /**
+     * Creates the prices table of the unified storage mode, if it does not exist yet. Rows are clustered on
+     * ticker and epoch day, so that the time period of a stock is a range seek on the primary key.
+     * @param connection the database connection
+     * @throws SQLException if a database access error occurs
+     */
+    private void createPricesTable(Connection connection) throws SQLException {
+        createPricesTable(connection, PRICES_TABLE);
+    }
+
+
+    /**
+     * Creates a table with the layout of the prices table of the unified storage mode, if it does not exist yet.
+     * @param connection the database connection
+     * @param table the name of the table
+     * @throws SQLException if a database access error occurs
+     */
+    private void createPricesTable(Connection connection, String table) throws SQLException {
+        String create =
+                "CREATE TABLE IF NOT EXISTS " + table + " ("
+                +"    Ticker TEXT NOT NULL,  "
+                +"    Day INTEGER NOT NULL,  "
+                +"    Open REAL,             "
+                +"    High REAL,             "
+                +"    Low REAL,              "
+                +"    Close REAL,            "
+                +"    Volume REAL,           "
+                +"    " + CUMULATIVE_COLUMNS + ","
+                +"    PRIMARY KEY (Ticker, Day)"
+                +") WITHOUT ROWID";
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(create);
+        }
+    }
+
+
+    /**
+     * Copies all per-ticker tables into the prices table of the unified storage mode, converting their text
+     * dates to epoch days, or copying them as they are from tables already keyed by epoch day. Existing rows of
+     * the same stock and date are replaced, and the per-ticker tables are kept. The cumulative sums of each
+     * migrated stock are calculated again over all its rows.
+     * @return the number of migrated stock tickers, -1 if the migration failed
+     */
+    public int migrateToUnified() {
+        int migrated = 0;
+        try (ConnectionPool.PooledConnection connection = pool.acquire()) {
+            Connection sqlConnection = connection.connection();
+            createPricesTable(sqlConnection);
+
+            // Find per-ticker tables
+            TickerRegistry perTicker = new TickerRegistry();
+            perTicker.load(sqlConnection, StorageMode.PER_TICKER);
+
+            // Copy all tables in a single transaction
+            sqlConnection.setAutoCommit(false);
+            for (String stock : perTicker.list()) {
+                // Tables of the per-ticker epoch storage mode are already keyed by epoch day
+                String day = hasColumn(sqlConnection, stock, "Day")
+                        ? "Day"
+                        : "CAST(julianday(Date) - 2440587.5 AS INTEGER)";
+                String copy =
+                        "INSERT OR REPLACE INTO " + PRICES_TABLE + "                            "
+                        +"    (Ticker, Day, Open, High, Low, Close, Volume)                     "
+                        +"SELECT                                                                "
+                        +"    ?,                                                                "
+                        +"    " + day + ",                                                      "
+                        +"    Open, High, Low, Close, Volume                                    "
+                        +"FROM                                                                  "
+                        +"    " + stock;
+
+                // Table names come from the database metadata, the ticker is bound as a value
+                try (PreparedStatement statement = sqlConnection.prepareStatement(copy)) {
+                    statement.setString(1, stock);
+                    statement.executeUpdate();
+                }
+                rebuildCumulativeSums(sqlConnection, PRICES_TABLE, "Day", stock, null);
+                migrated++;
+            }
+            sqlConnection.commit();
+            sqlConnection.setAutoCommit(true);
+
+            // Make migrated tickers available
+            if (mode == StorageMode.UNIFIED) {
+                registry.load(sqlConnection, mode);
+                for (String stock : perTicker.list()) {
+                    notifyUpdated(stock);
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return -1;
+        }
+
+        return migrated;
+    }
+
+
+    /**
+     * Inserts parsed rows of a stock using the given connection, within the current transaction. The rows must
+     * be dated on or after the given date, and their cumulative sums continue from the most recent row of the
+     * stock before that date in its table, relative to the first row of the stock, or relative to the first
+     * inserted row if no row is kept. Rows are inserted in date order, whatever their order in the .csv file.
+     * @param connection the database connection
+     * @param table the table of the stock, or its staging table
+     * @param stock the stock ticker
+     * @param fromDay the first date of the rows, in epoch days, before which rows of the stock are kept; null if
+     *                no row is kept
+     * @param rows the rows to be inserted
+     * @param bulk whether to commit every BULK_ROWS_PER_COMMIT rows, while bulk loading
+     * @throws SQLException if a database access error occurs, or this method is called on a closed connection
+     */
+    private void insertRows(Connection connection, String table, String stock, Integer fromDay, PriceRows rows,
+                            boolean bulk) throws SQLException {
+        if (rows.size() == 0) {
+            return;
+        }
+
+        // Sum up in date order, since .csv files list the most recent date first
+        int[] order = rows.dateOrder();
+
+        // Continue the cumulative sums of the most recent kept row, relative to the first kept row
+        KeptSums kept = keptSums(connection, stock, fromDay);
+        long cumRows = kept == null ? 0 : kept.rows;
+        double cumDelta = kept == null ? 0 : kept.delta;
+        double cumDeltaSq = kept == null ? 0 : kept.deltaSq;
+        double reference = kept == null ? rows.close(order[0]) : kept.reference;
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(insertStatement(table))) {
+            int pending = 0;
+            for (int i : order) {
+                int index = setPrices(preparedStatement, stock, rows.day(i), rows.open(i), rows.high(i),
+                        rows.low(i), rows.close(i), rows.volume(i));
+
+                // Set cumulative sums up to and including this row
+                double delta = rows.close(i) - reference;
+                cumRows++;
+                cumDelta += delta;
+                cumDeltaSq += delta * delta;
+                preparedStatement.setLong(index++, cumRows);
+                preparedStatement.setDouble(index++, cumDelta);
+                preparedStatement.setDouble(index, cumDeltaSq);
+
+                preparedStatement.addBatch();
+
+                // Commit a full chunk while bulk loading
+                if (bulk && ++pending == BULK_ROWS_PER_COMMIT) {
+                    preparedStatement.executeBatch();
+                    connection.commit();
+                    pending = 0;
+                }
+            }
+
+            // Execute batch insert
+            preparedStatement.executeBatch();
+        }
+    }
+
+
+    /**
+     * Reads the cumulative sums of the most recent row of a stock before a date, with two indexed lookups in the
+     * table of the stock, along with the reference price they are relative to.
+     * @param connection the database connection
+     * @param stock the stock ticker
+     * @param beforeDay the date before which rows are kept, in epoch days; null if no row is kept
+     * @return the sums of the most recent kept row, null if no row is kept
+     * @throws SQLException if a database access error occurs
+     */
+    private KeptSums keptSums(Connection connection, String stock, Integer beforeDay) throws SQLException {
+        if (beforeDay == null) {
+            return null;
+        }
+        String ticker = mode == StorageMode.UNIFIED ? "Ticker = ? AND " : "";
+        String previous =
+                "SELECT CumRows, CumDelta, CumDeltaSq FROM " + table(stock)
+                + " WHERE " + ticker + dateColumn() + " < ? ORDER BY " + dateColumn() + " DESC LIMIT 1";
+        String first =
+                "SELECT Close FROM " + table(stock) + (mode == StorageMode.UNIFIED ? " WHERE Ticker = ?" : "")
+                + " ORDER BY " + dateColumn() + " LIMIT 1";
+
+        try (
+                PreparedStatement previousStatement = connection.prepareStatement(previous);
+                PreparedStatement firstStatement = connection.prepareStatement(first)
+        ) {
+            int index = 1;
+            if (mode == StorageMode.UNIFIED) {
+                previousStatement.setString(index++, stock);
+                firstStatement.setString(1, stock);
+            }
+            setDay(previousStatement, index, beforeDay);
+
+            KeptSums kept = new KeptSums();
+            try (ResultSet resultSet = previousStatement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                kept.rows = resultSet.getLong(1);
+                kept.delta = resultSet.getDouble(2);
+                kept.deltaSq = resultSet.getDouble(3);
+            }
+            try (ResultSet resultSet = firstStatement.executeQuery()) {
+                resultSet.next();
+                kept.reference = resultSet.getDouble(1);
+            }
+            return kept;
+        }
+    }
 
 
     /**
-     * A class that handles all operations to the specified database.
-     * @param url the url from the database
+     * Gets the statement inserting a row of a stock, with parameters set by setPrices followed by the
+     * cumulative sums.
+     * @param table the table of the stock, or its staging table
+     * @return the SQL statement
      */
-    public DatabaseHandler(String url) {
-        this.url = url;
+    private String insertStatement(String table) {
+        return mode == StorageMode.UNIFIED
+                ? "INSERT INTO " + table + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                : "INSERT INTO " + table + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
     }
 
 
     /**
-     * Creates a new table using the data in the given .csv file. Overwrites already existing table with the same name.
-     * @param file .csv file to be read from
+     * Sets the parameters of an insert statement for the date and prices of a row.
+     * @param statement the insert statement
+     * @param stock the stock ticker
+     * @param day the date in epoch days
+     * @param open the Open price
+     * @param high the High price
+     * @param low the Low price
+     * @param close the Close price
+     * @param volume the traded Volume
+     * @return the index of the first parameter after the prices, which is the first cumulative sum
+     * @throws SQLException if a database access error occurs
+     */
+    private int setPrices(PreparedStatement statement, String stock, int day, double open, double high, double low,
+                          double close, double volume) throws SQLException {
+        int index = 1;
+        if (mode == StorageMode.UNIFIED) {
+            // Store dates of the prices table as epoch days
+            statement.setString(index++, stock);
+            statement.setInt(index++, day);
+        } else if (mode == StorageMode.PER_TICKER_EPOCH) {
+            statement.setInt(index++, day);
+        } else {
+            // Convert date types for better compatibility with SQLite
+            statement.setString(index++, LocalDate.ofEpochDay(day).toString());
+        }
+
+        // Set remaining entries
+        statement.setDouble(index++, open);
+        statement.setDouble(index++, high);
+        statement.setDouble(index++, low);
+        statement.setDouble(index++, close);
+        statement.setDouble(index++, volume);
+        return index;
+    }
+
+
+    /**
+     * Adds the cumulative sum columns to the tables of the current storage mode that do not have them yet, and
+     * calculates them over all existing rows. Columns of sums of the Close prices themselves, written by earlier
+     * versions, are replaced. Stocks whose most recent row has no cumulative sums, such as those migrated before
+     * the sums were calculated on the prices table, are repaired the same way. Each table is upgraded in its own
+     * transaction.
+     * @param connection the database connection
+     * @throws SQLException if a database access error occurs
      */
-    protected void updateDB(File file) {
-        // Get names and paths
-        String csvPath = file.getPath();
-        String fileName = file.getName().toLowerCase();
-        String tableName = fileName.substring(0, fileName.lastIndexOf('.'));
+    private void addCumulativeSums(Connection connection) throws SQLException {
+        List<String> tables = mode == StorageMode.UNIFIED ? List.of(PRICES_TABLE) : registry.list();
+        for (String table : tables) {
+            List<String> stocks = mode == StorageMode.UNIFIED ? registry.list() : List.of(table);
+
+            // Check the columns of the table
+            boolean upgraded = hasColumn(connection, table, "CumDelta");
+
+            // Only rebuild stocks without sums, if the columns already exist
+            List<String> missing = new ArrayList<>();
+            for (String stock : upgraded ? stocks : List.<String>of()) {
+                if (missingCumulativeSums(connection, stock)) {
+                    missing.add(stock);
+                }
+            }
+            if (upgraded && missing.isEmpty()) {
+                continue;
+            }
+
+            connection.setAutoCommit(false);
+            if (!upgraded) {
+                try (Statement statement = connection.createStatement()) {
+                    // Drop legacy sums first, so that the columns keep the order of the insert statement
+                    for (String column : LEGACY_CUMULATIVE_COLUMNS) {
+                        if (hasColumn(connection, table, column)) {
+                            statement.executeUpdate("ALTER TABLE " + table + " DROP COLUMN " + column);
+                        }
+                    }
+                    for (String column : CUMULATIVE_COLUMNS.split(", ")) {
+                        statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column);
+                    }
+                    if (mode == StorageMode.PER_TICKER) {
+                        statement.executeUpdate(dateIndex(table));
+                    }
+                }
+                missing = stocks;
+            }
+            for (String stock : missing) {
+                rebuildCumulativeSums(connection, stock);
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
 
-        // Prepare statement text
-        String drop = "DROP TABLE IF EXISTS " + tableName;
-        String create = "CREATE TABLE " + tableName + "(Date TEXT, Open REAL, High REAL, Low REAL, Close REAL, Volume REAL)";
-        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?, ?)";
 
+    /**
+     * Checks whether a table has a column.
+     * @param connection the database connection
+     * @param table the name of the table
+     * @param column the name of the column, in any case
+     * @return true if the table has the column, false otherwise
+     * @throws SQLException if a database access error occurs
+     */
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
         try (
-                // Connect to database
-                Connection connection = DriverManager.getConnection(url);
-                Statement statement = connection.createStatement()
+                Statement statement = connection.createStatement();
+                ResultSet columns = statement.executeQuery("PRAGMA table_info(" + table + ")")
         ) {
-            // Reset / Drop table if exists
-            statement.executeUpdate(drop);
-            statement.executeUpdate(create);
-
-            // Insert data from csv files
-            insertCSVRecords(csvPath, connection, insert);
+            while (columns.next()) {
+                if (columns.getString("name").equalsIgnoreCase(column)) {
+                    return true;
+                }
+            }
         }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
+        return false;
+    }
+
+
+    /**
+     * Checks whether the most recent row of a stock has no cumulative sums, with a single indexed lookup.
+     * @param connection the database connection
+     * @param stock the stock ticker
+     * @return true if the most recent row has no cumulative sums, false otherwise or if the stock has no data
+     * @throws SQLException if a database access error occurs
+     */
+    private boolean missingCumulativeSums(Connection connection, String stock) throws SQLException {
+        String query =
+                "SELECT CumRows IS NULL FROM " + table(stock)
+                + (mode == StorageMode.UNIFIED ? " WHERE Ticker = ?" : "")
+                + " ORDER BY " + dateColumn() + " DESC LIMIT 1";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            if (mode == StorageMode.UNIFIED) {
+                statement.setString(1, stock);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
         }
     }
 
+
     /**
-     * Inserts the data from the csv file in the given path using the given connection and prepared statement text
-     * @param csvPath the path from the source csv file
+     * Calculates the cumulative sums of all rows of a stock again, in date order, within the current
+     * transaction, in the table of the current storage mode.
      * @param connection the database connection
-     * @param insert the prepared statement text
-     * @throws SQLException if a database access error occurs, or this method is called on a closed connection
+     * @param stock the stock ticker
+     * @throws SQLException if a database access error occurs
      */
-    private void insertCSVRecords(String csvPath, Connection connection, String insert) throws SQLException {
-        try (
-                // Open reader for CSV File
-                FileReader reader = new FileReader(csvPath);
-                CSVParser csvParser = new CSVParser(reader,
-                        CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build());
+    private void rebuildCumulativeSums(Connection connection, String stock) throws SQLException {
+        rebuildCumulativeSums(connection, table(stock), dateColumn(), mode == StorageMode.UNIFIED ? stock : null,
+                null);
+    }
+
+
+    /**
+     * Calculates the cumulative sums of all rows of a stock in the given table again, in date order, within the
+     * current transaction. The sums either start from the first row, relative to its Close price, or continue
+     * from the kept rows of the stock in another table, such as for the rows of a staging table. Does not depend
+     * on the current storage mode, so that other layouts can be written, such as while migrating.
+     * @param connection the database connection
+     * @param table the table holding the stock
+     * @param date the column holding the dates of the rows, ordered like the dates
+     * @param ticker the stock ticker to filter a table of several stocks by, null if the table only holds one
+     * @param kept the sums of the most recent row before all rows of the table and their reference price, null
+     *             to start from the first row
+     * @throws SQLException if a database access error occurs
+     */
+    private static void rebuildCumulativeSums(Connection connection, String table, String date, String ticker,
+                                              KeptSums kept) throws SQLException {
+        String filter = ticker == null ? "1" : "Ticker = ?1";
+        String update =
+                "UPDATE " + table + "                                                                "
+                +"SET                                                                                 "
+                +"    CumRows = sums.CumRows,                                                         "
+                +"    CumDelta = sums.CumDelta,                                                       "
+                +"    CumDeltaSq = sums.CumDeltaSq                                                    "
+                +"FROM (                                                                              "
+                +"    SELECT                                                                          "
+                +"        SumDate,                                                                    "
+                +"        SUM(RowCount) OVER days AS CumRows,                                         "
+                +"        SUM(Delta) OVER days AS CumDelta,                                           "
+                +"        SUM(DeltaSq) OVER days AS CumDeltaSq                                        "
+                +"    FROM (                                                                          "
+                // The kept sums sort first by their NULL date, so rows are added to them in the same order as Java
+                +"        SELECT NULL AS SumDate, ?2 AS RowCount, ?3 AS Delta, ?4 AS DeltaSq          "
+                +"        UNION ALL                                                                   "
+                +"        SELECT                                                                      "
+                +"            " + date + ",                                                           "
+                +"            1,                                                                      "
+                +"            Close - Reference,                                                      "
+                +"            (Close - Reference) * (Close - Reference)                               "
+                +"        FROM                                                                        "
+                +"            " + table + ",                                                          "
+                +"            (                                                                       "
+                +"                SELECT IFNULL(?5, (                                                 "
+                +"                    SELECT Close FROM " + table + "                                 "
+                +"                    WHERE " + filter + " ORDER BY " + date + " LIMIT 1              "
+                +"                )) AS Reference                                                     "
+                +"            )                                                                       "
+                +"        WHERE                                                                       "
+                +"            " + filter + "                                                          "
+                +"    )                                                                               "
+                +"    WINDOW days AS (ORDER BY SumDate ROWS UNBOUNDED PRECEDING)                      "
+                +") AS sums                                                                           "
+                +"WHERE                                                                               "
+                +"    " + table + "." + date + " = sums.SumDate                                       "
+                +"    AND " + (ticker == null ? "1" : table + ".Ticker = ?1");
+
+        try (PreparedStatement statement = connection.prepareStatement(update)) {
+            // Every parameter is bound, the ticker as NULL if it does not occur
+            statement.setString(1, ticker);
+            statement.setLong(2, kept == null ? 0 : kept.rows);
+            statement.setDouble(3, kept == null ? 0 : kept.delta);
+            statement.setDouble(4, kept == null ? 0 : kept.deltaSq);
+            if (kept == null) {
+                statement.setNull(5, Types.REAL);
+            } else {
+                statement.setDouble(5, kept.reference);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+
+    /**
+     * Gets the statement creating the index on the text dates of a per-ticker table.
+     * @param stock the stock ticker
+     * @return the SQL statement
+     */
+    private static String dateIndex(String stock) {
+        return "CREATE INDEX IF NOT EXISTS " + stock + "_date ON " + stock + "(Date)";
+    }
+
+
+    /**
+     * Registers a listener that is notified of every stock whose data is changed afterwards, once the change is
+     * committed: by writeUpdates, and therefore bulkLoad, by streamUpdate, and by migrateToUnified in unified
+     * storage mode.
+     * @param listener the listener
+     */
+    @Override
+    public void addUpdateListener(UpdateListener listener) {
+        listeners.add(listener);
+    }
+
+
+    @Override
+    public DatabaseHandler getDatabaseHandler() {
+        return this;
+    }
+
+
+    /**
+     * Notifies all listeners that the data of a stock was changed.
+     * @param stock the stock ticker
+     */
+    private void notifyUpdated(String stock) {
+        for (UpdateListener listener : listeners) {
+            listener.updated(stock);
+        }
+    }
+
+
+    /**
+     * Gets a list of available stock tickers in the database. Can serve as a list of valid tickers to avoid
+     * injections.
+     * @return the list of available stock tickers in alphabetical order
+     */
+    @Override
+    public List<String> getAvailableStocks() {
+        return registry.list();
+    }
 
-                // Prepare statement
-                PreparedStatement preparedStatement = connection.prepareStatement(insert)
-        ) {
-            // Allow batch processing
-            connection.setAutoCommit(false);
 
-            // Iterate over CSV Records
-            for (CSVRecord record : csvParser) {
-                // Convert date types for better compatibility with SQLite
-                SimpleDateFormat format1 = new SimpleDateFormat("MM/dd/yyyy");
-                SimpleDateFormat format2 = new SimpleDateFormat("yyyy-MM-dd");
-                preparedStatement.setString(1, format2.format(format1.parse(record.get(0))));
+    /**
+     * Checks whether a stock ticker is available in the database, without accessing the database.
+     * Serves as validation of tickers to avoid injections.
+     * @param stock the stock ticker
+     * @return true if the ticker is available, false otherwise
+     */
+    @Override
+    public boolean isAvailable(String stock) {
+        return registry.contains(stock);
+    }
+
+
+    /**
+     * Loads the full Close price history of a valid stock ticker into memory with a single sequential read,
+     * ordered by date ascending.
+     * @param stock the stock ticker to load
+     * @return the price series of the stock if it is valid, null otherwise
+     */
+    @Override
+    public PriceSeries getPriceSeries(String stock) {
+        // Restrict again to only valid strings to avoid injections
+        if (!isAvailable(stock)) {
+            return null;
+        }
+
+        // Convert dates to epoch days in the query, so that no date objects are created per row
+        String query = mode == StorageMode.UNIFIED
+                ? "SELECT Day, Close FROM " + PRICES_TABLE + " WHERE Ticker = ? ORDER BY Day"
+                : mode == StorageMode.PER_TICKER_EPOCH
+                ? "SELECT Day, Close FROM " + stock + " ORDER BY Day"
+                : "SELECT CAST(julianday(Date) - 2440587.5 AS INTEGER), Close FROM " + stock + " ORDER BY Date";
+
+        PriceSeries series = null;
+        try (
+                ConnectionPool.PooledConnection connection = pool.acquire()
+        ) {
+            PreparedStatement statement = connection.prepare(table(stock), query);
+            if (mode == StorageMode.UNIFIED) {
+                statement.setString(1, stock);
+            }
+            ResultSet resultSet = statement.executeQuery();
 
-                // Set remaining entries
-                for (int i = 1; i < record.size(); i++) {
-                    preparedStatement.setString(i + 1, record.get(i));
+            // Grow primitive arrays as needed, instead of boxing every row
+            int[] dates = new int[256];
+            double[] closes = new double[256];
+            int size = 0;
+            while (resultSet.next()) {
+                if (size == dates.length) {
+                    dates = Arrays.copyOf(dates, size * 2);
+                    closes = Arrays.copyOf(closes, size * 2);
                 }
+                dates[size] = resultSet.getInt(1);
+                closes[size] = resultSet.getDouble(2);
+                size++;
+            }
+            resultSet.close();
+            series = new ArrayPriceSeries(dates, closes, size);
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
 
-                preparedStatement.addBatch();
+        return series;
+    }
+
+
+    /**
+     * Loads the full price history of a valid stock ticker, with all columns, into off-heap memory with a
+     * single sequential read, ordered by date ascending. The rows are counted first, so that the columns are
+     * allocated once.
+     * @param stock the stock ticker to load
+     * @return the price series of the stock if it is valid, null otherwise
+     */
+    public OffHeapPriceSeries getOffHeapSeries(String stock) {
+        // Restrict again to only valid strings to avoid injections
+        if (!isAvailable(stock)) {
+            return null;
+        }
+
+        // Convert dates to epoch days in the query, like getPriceSeries
+        String columns = "Open, High, Low, Close, Volume";
+        String count = mode == StorageMode.UNIFIED
+                ? "SELECT COUNT(*) FROM " + PRICES_TABLE + " WHERE Ticker = ?"
+                : "SELECT COUNT(*) FROM " + stock;
+        String query = mode == StorageMode.UNIFIED
+                ? "SELECT Day, " + columns + " FROM " + PRICES_TABLE + " WHERE Ticker = ? ORDER BY Day"
+                : mode == StorageMode.PER_TICKER_EPOCH
+                ? "SELECT Day, " + columns + " FROM " + stock + " ORDER BY Day"
+                : "SELECT CAST(julianday(Date) - 2440587.5 AS INTEGER), " + columns + " FROM " + stock
+                  + " ORDER BY Date";
+
+        OffHeapPriceSeries series = null;
+        try (
+                ConnectionPool.PooledConnection connection = pool.acquire()
+        ) {
+            PreparedStatement countStatement = connection.prepare(table(stock), count);
+            PreparedStatement statement = connection.prepare(table(stock), query);
+            if (mode == StorageMode.UNIFIED) {
+                countStatement.setString(1, stock);
+                statement.setString(1, stock);
             }
 
-            // Execute batch insert and commit transaction
-            preparedStatement.executeBatch();
-            connection.commit();
+            int rows;
+            try (ResultSet resultSet = countStatement.executeQuery()) {
+                rows = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
 
-            // Return changes to default
-            connection.setAutoCommit(true);
+            // Append straight into the columns, growing them only if rows were added since counting
+            OffHeapPriceSeries loaded = new OffHeapPriceSeries(rows);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    loaded.append(resultSet.getInt(1), resultSet.getDouble(2), resultSet.getDouble(3),
+                            resultSet.getDouble(4), resultSet.getDouble(5), resultSet.getDouble(6));
+                }
+            }
+            series = loaded;
         }
-        catch (IOException | ParseException e) {
+        catch (SQLException e) {
             System.out.println(e.getMessage());
         }
+
+        return series;
     }
 
 
     /**
-     * Gets a list of available stock tickers in the database. Can serve as a list of valid tickers to avoid injections.
-     * @return the list of available stock tickers if the database is not empty, null otherwise
+     * Gets the most recent date of a valid stock ticker with a single indexed lookup.
+     * @param stock the stock ticker
+     * @return the most recent date in epoch days, Integer.MIN_VALUE if the stock is invalid or has no data
      */
-    protected List<String> getAvailableStocks() {
-        // Get available stock tickers based on existing table names
-        List<String> availableStocks = null;
+    @Override
+    public int getLastDate(String stock) {
+        // Restrict again to only valid strings to avoid injections
+        if (!isAvailable(stock)) {
+            return Integer.MIN_VALUE;
+        }
+
+        int lastDate = Integer.MIN_VALUE;
         try (
-                Connection connection = DriverManager.getConnection(url)
+                ConnectionPool.PooledConnection connection = pool.acquire()
         ) {
-            // Get table names from Metadata
-            DatabaseMetaData metaData = connection.getMetaData();
-            ResultSet tables = metaData.getTables(null, null, "%", null);
-            availableStocks = new ArrayList<>();
-            tables.next(); // skip header line
-            while (tables.next()) {
-                availableStocks.add(tables.getString("TABLE_NAME"));
-            }
-        } catch (SQLException e) {
+            lastDate = readLastDate(connection, stock);
+        }
+        catch (SQLException e) {
             System.out.println(e.getMessage());
         }
 
-        return availableStocks;
+        return lastDate;
+    }
+
+
+    /**
+     * Reads the most recent date of a valid stock ticker using the given connection.
+     * @param connection the pooled database connection
+     * @param stock the stock ticker
+     * @return the most recent date in epoch days, Integer.MIN_VALUE if the stock has no data
+     * @throws SQLException if a database access error occurs
+     */
+    private int readLastDate(ConnectionPool.PooledConnection connection, String stock) throws SQLException {
+        String query = mode == StorageMode.UNIFIED
+                ? "SELECT MAX(Day) FROM " + PRICES_TABLE + " WHERE Ticker = ?"
+                : mode == StorageMode.PER_TICKER_EPOCH
+                ? "SELECT MAX(Day) FROM " + stock
+                : "SELECT CAST(julianday(MAX(Date)) - 2440587.5 AS INTEGER) FROM " + stock;
+
+        PreparedStatement statement = connection.prepare(table(stock), query);
+        if (mode == StorageMode.UNIFIED) {
+            statement.setString(1, stock);
+        }
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (resultSet.next()) {
+                int day = resultSet.getInt(1);
+                if (!resultSet.wasNull()) {
+                    return day;
+                }
+            }
+        }
+        return Integer.MIN_VALUE;
     }
 
 
@@ -143,17 +1399,17 @@ public class DatabaseHandler {
      * @param days the time period to be analyzed in, in past days from most recent entry
      * @return the Simple Moving Average of the stock if it is valid, 0 otherwise
      */
-    protected float getSMA (String stock, int days) {
-        // Create query for average
+    @Override
+    public float getSMA (String stock, int days) {
+        // Create query for average, from the cumulative sums before and at the end of the time period
         String query =
-                "SELECT                                                                       "
-                +"    AVG(Close)                                                              "
+                periodTotals(stock, "<=")
+                +"SELECT                                                                      "
+                +"    Reference + Total / Count                                               "
                 +"FROM                                                                        "
-                +"    " + stock + "                                                           "
-                +"WHERE                                                                       "
-                +"    Date > DATE((SELECT MAX(DATE) FROM " + stock + "), '-" + days + " days')";
+                +"    totals";
 
-        return runQuery(query, stock);
+        return runQuery(query, stock, days);
     }
 
 
@@ -164,55 +1420,48 @@ public class DatabaseHandler {
      * @param days the time period to be analyzed in, in past days from most recent entry
      * @return the Exponential Moving Average of the stock if it is valid, 0 otherwise
      */
-    protected float getEMA (String stock, int days) {
+    @Override
+    public float getEMA (String stock, int days) {
+        // Restrict again to only valid strings to avoid injections
+        if (!isAvailable(stock)) {
+            return 0;
+        }
+
         // Calculate alpha (smoothing factor) of the EMA
-        float alpha = 2 / (float)(days + 1);
+        double alpha = 2 / (double) (days + 1);
 
-        // Create query with recursive CTEs
+        // Create query running the ema() function over the time period in date order, keeping the last value
+        String date = dateColumn();
         String query =
-                "WITH RECURSIVE                                                                          "
-                +"    scope AS (                                                                         "
-                +"        -- Isolate necessary values                                                  \n"
-                +"        SELECT                                                                         "
-                +"            Date,                                                                      "
-                +"            Close,                                                                     "
-                +"            ROW_NUMBER() OVER (ORDER BY DATE DESC) as row_number                       "
-                +"        FROM                                                                           "
-                +"            " + stock + "                                                              "
-                +"        WHERE                                                                          "
-                +"            Date > DATE((SELECT MAX(DATE) FROM " + stock + "), '-" + days + " days')   "
-                +"    ),                                                                                 "
-                +"    ema_calc AS(                                                                       "
-                +"        -- Get Close value of first date as initial EMA                              \n"
-                +"        SELECT                                                                         "
-                +"            *,                                                                         "
-                +"            Close as EMA                                                               "
-                +"        FROM                                                                           "
-                +"            scope                                                                      "
-                +"        WHERE                                                                          "
-                +"            Date = (SELECT MIN(Date) FROM scope)                                       "
-                +"                                                                                       "
-                +"        UNION ALL                                                                      "
-                +"                                                                                       "
-                +"        -- Calculate EMA for subsequent dates                                        \n"
-                +"        SELECT                                                                         "
-                +"            scope.Date,                                                                "
-                +"            scope.Close,                                                               "
-                +"            scope.row_number,                                                          "
-                +"            (scope.Close * " + alpha + ") + (ema_calc.EMA * (1 - " + alpha + ")) as EMA"
-                +"        FROM                                                                           "
-                +"            scope                                                                      "
-                +"        JOIN                                                                           "
-                +"            ema_calc                                                                   "
-                +"        ON                                                                             "
-                +"            scope.row_number = ema_calc.row_number - 1                                 "
-                +"        WHERE                                                                          "
-                +"            scope.Date <= (SELECT MAX(Date) FROM scope)                                "
-                +"    )                                                                                  "
-                +"                                                                                       "
-                +"SELECT EMA, MAX(Date) FROM ema_calc;                                                   ";
-
-        return runQuery(query, stock);
+                "SELECT                                                                       "
+                +"    ema(Close, ?) OVER (ORDER BY " + date + " ROWS UNBOUNDED PRECEDING)     "
+                +"FROM                                                                        "
+                +"    " + table(stock) + "                                                    "
+                +"WHERE                                                                       "
+                +"    " + period(stock, ">") + "                                              "
+                +"ORDER BY                                                                    "
+                +"    " + date + " DESC                                                       "
+                +"LIMIT 1";
+
+        float result = 0;
+        try (
+                ConnectionPool.PooledConnection connection = pool.acquire()
+        ) {
+            PreparedStatement statement = connection.prepare(table(stock), query);
+            statement.setDouble(1, alpha);
+            beginSnapshot(connection);
+            bindPeriod(connection, statement, 2, stock, days);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    result = resultSet.getFloat(1);
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+
+        return result;
     }
 
 
@@ -223,49 +1472,99 @@ public class DatabaseHandler {
      * @param days the time period to be analyzed in, in past days from most recent entry
      * @return the Price Volatility of the stock if it is valid, 0 otherwise
      */
-    protected float getVolatility (String stock, int days) {
-        // Create query for Variance
+    @Override
+    public float getVolatility (String stock, int days) {
+        // Restrict again to only valid strings to avoid injections
+        if (!isAvailable(stock)) {
+            return 0;
+        }
+
+        // Create query for Variance in the time period, including its start date, from the cumulative sums
+        // before and at the end of the time period
         String query =
-                "WITH scope AS (                                                                   "
-                +"    SELECT                                                                       "
-                +"        Close as close,                                                          "
-                +"        AVG(Close) OVER () AS avg                                                "
-                +"    FROM                                                                         "
-                +"        " + stock + "                                                            "
-                +"    WHERE                                                                        "
-                +"        Date >= DATE((SELECT MAX(DATE) FROM " + stock + "), '-" + days + " days')"
-                +")                                                                                "
-                +"SELECT                                                                           "
-                +"    AVG((scope.close - scope.avg) * (scope.close - scope.avg)) as variance       "
-                +"FROM scope;                                                                      ";
+                periodTotals(stock, "<")
+                +"SELECT                                                                      "
+                +"    MAX(0, (Squares - Total * Total / Count) / Count)                       "
+                +"FROM                                                                        "
+                +"    totals";
 
         // Return Volatility (Standard Deviation)
-        float variance = runQuery(query, stock);
+        float variance = runQuery(query, stock, days);
         return (float) Math.sqrt(variance);
     }
 
 
+    /**
+     * Gets the common table expression of the totals of a stock in a time period, which are the differences
+     * of the cumulative sums of the most recent row and of the last row before the time period: the Count of
+     * rows, the Total of the Close prices minus the Reference price and the sum of their Squares, along with the
+     * Reference price itself. All rows are point lookups on the dates, whatever the length of the time period.
+     * Its parameters are set by bindPeriod.
+     * @param stock the stock ticker
+     * @param comparison the comparison of the dates before the time period with its start, e.g. "<=" for time
+     *                   periods excluding their start date, "<" for those including it
+     * @return the SQL common table expression
+     */
+    private String periodTotals(String stock, String comparison) {
+        String date = dateColumn();
+        return
+                "WITH                                                                         "
+                +"    period_start AS (                                                       "
+                +"        SELECT CumRows, CumDelta, CumDeltaSq                                "
+                +"        FROM " + table(stock) + "                                           "
+                +"        WHERE " + period(stock, comparison) + "                             "
+                +"        ORDER BY " + date + " DESC LIMIT 1                                  "
+                +"    ),                                                                      "
+                +"    period_end AS (                                                         "
+                +"        SELECT CumRows, CumDelta, CumDeltaSq                                "
+                +"        FROM " + table(stock) + "                                           "
+                // Reuse the ticker bound as first parameter of the period condition
+                +"        WHERE " + (mode == StorageMode.UNIFIED ? "Ticker = ?1" : "1") + "   "
+                +"        ORDER BY " + date + " DESC LIMIT 1                                  "
+                +"    ),                                                                      "
+                +"    totals AS (                                                             "
+                +"        SELECT                                                              "
+                +"            period_end.CumRows - IFNULL(period_start.CumRows, 0) AS Count,  "
+                +"            period_end.CumDelta - IFNULL(period_start.CumDelta, 0) AS Total,"
+                +"            period_end.CumDeltaSq - IFNULL(period_start.CumDeltaSq, 0) AS Squares, "
+                +"            (                                                               "
+                +"                SELECT Close FROM " + table(stock) + "                      "
+                +"                WHERE " + (mode == StorageMode.UNIFIED ? "Ticker = ?1" : "1") + " "
+                +"                ORDER BY " + date + " LIMIT 1                               "
+                +"            ) AS Reference                                                  "
+                +"        FROM                                                                "
+                +"            period_end LEFT JOIN period_start                               "
+                +"    )                                                                       ";
+    }
+
+
     /**
      * Runs the analysis query on the database for a given valid stock and returns the resulting value.
+     * The query is prepared once per connection and table, and the stock and time period are bound as parameters.
      * @param query the query to be executed on the database
      * @param stock the stock based on which the analysis should be executed
+     * @param days the time period to be analyzed in, in past days from most recent entry
      * @return the result of the query if the stock is valid, 0 otherwise
      */
-    private float runQuery (String query, String stock) {
+    private float runQuery (String query, String stock, int days) {
         // Restrict again to only valid strings to avoid injections
-        if (!getAvailableStocks().contains(stock)) {
+        if (!isAvailable(stock)) {
             return 0;
         }
 
         // Execute query
         float result = 0;
         try (
-                Connection connection = DriverManager.getConnection(url);
-                Statement statement = connection.createStatement()
+                ConnectionPool.PooledConnection connection = pool.acquire()
         ) {
-            ResultSet resultSet = statement.executeQuery(query);
-            resultSet.next(); // skip header line
-            result = resultSet.getFloat(1);
+            PreparedStatement statement = connection.prepare(table(stock), query);
+            beginSnapshot(connection);
+            bindPeriod(connection, statement, 1, stock, days);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) { // no row if the stock has no data
+                    result = resultSet.getFloat(1);
+                }
+            }
         }
         catch (SQLException e) {
             System.out.println(e.getMessage());
@@ -275,4 +1574,184 @@ public class DatabaseHandler {
     }
 
 
+    /**
+     * Gets the table holding the prices of a stock.
+     * @param stock the stock ticker
+     * @return the prices table in unified storage mode, the table of the stock otherwise
+     */
+    private String table(String stock) {
+        return mode == StorageMode.UNIFIED ? PRICES_TABLE : stock;
+    }
+
+
+    /**
+     * Gets the column holding the dates of the rows.
+     * @return the text date column in per-ticker storage mode, the epoch day column otherwise
+     */
+    private String dateColumn() {
+        return mode == StorageMode.PER_TICKER ? "Date" : "Day";
+    }
+
+
+    /**
+     * Gets the condition restricting the rows of a stock to a time period, starting at the most recent entry.
+     * Where dates are stored as epoch days, the start of the time period is an integer parameter, so that the
+     * condition is a range seek on the primary key. Its parameters are set by bindPeriod.
+     * @param stock the stock ticker
+     * @param comparison the comparison of the dates with the start of the time period, e.g. ">" or ">="
+     * @return the SQL condition
+     */
+    private String period(String stock, String comparison) {
+        if (mode == StorageMode.UNIFIED) {
+            return "Ticker = ? AND Day " + comparison + " ?";
+        }
+        if (mode == StorageMode.PER_TICKER_EPOCH) {
+            return "Day " + comparison + " ?";
+        }
+        return "Date " + comparison + " DATE((SELECT MAX(DATE) FROM " + stock + "), '-' || ? || ' days')";
+    }
+
+
+    /**
+     * Sets the parameters of a condition created by period. Where dates are stored as epoch days, the start of
+     * the time period is calculated once from the most recent date of the stock.
+     * @param connection the pooled database connection the statement was prepared with
+     * @param statement the prepared statement containing the condition
+     * @param index the index of the first parameter of the condition
+     * @param stock the stock ticker
+     * @param days the time period, in past days from most recent entry
+     * @throws SQLException if a database access error occurs
+     */
+    private void bindPeriod(ConnectionPool.PooledConnection connection, PreparedStatement statement, int index,
+                            String stock, int days) throws SQLException {
+        if (mode == StorageMode.PER_TICKER) {
+            statement.setInt(index, days);
+            return;
+        }
+
+        // Without data, the start is past every date
+        int lastDate = readLastDate(connection, stock);
+        int start = lastDate == Integer.MIN_VALUE ? Integer.MAX_VALUE : lastDate - days;
+
+        if (mode == StorageMode.UNIFIED) {
+            statement.setString(index++, stock);
+        }
+        statement.setInt(index, start);
+    }
+
+
+    /**
+     * Starts a read transaction where bindPeriod reads the most recent date of a stock before the query itself,
+     * so that both read the same snapshot of the database, even if an update is committed in between. The
+     * transaction is ended when the connection is returned to the pool.
+     * @param connection the pooled database connection
+     * @throws SQLException if a database access error occurs
+     */
+    private void beginSnapshot(ConnectionPool.PooledConnection connection) throws SQLException {
+        if (mode != StorageMode.PER_TICKER) {
+            connection.connection().setAutoCommit(false);
+        }
+    }
+
+
+    /**
+     * A class that writes the batches of rows streamed from a .csv file into a staging table, committing every
+     * given number of rows and reporting the progress after every batch. Cumulative sums are left empty.
+     */
+    private class StagedRows implements ChunkReceiver {
+
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final String stock;
+        private final int rowsPerTransaction;
+        private final long totalBytes;
+        private final IngestProgress progress;
+        private long rows;
+        private long uncommitted;
+        private long bytesRead;
+        private int lastDay;
+
+
+        private StagedRows(Connection connection, PreparedStatement statement, String stock, int fromDay,
+                           int rowsPerTransaction, long totalBytes, IngestProgress progress) {
+            this.connection = connection;
+            this.statement = statement;
+            this.stock = stock;
+            this.rowsPerTransaction = rowsPerTransaction;
+            this.totalBytes = totalBytes;
+            this.progress = progress;
+            this.lastDay = fromDay;
+        }
+
+
+        @Override
+        public void receive(PriceRows batch, long bytes) throws SQLException {
+            bytesRead += bytes;
+            if (batch.size() == 0) {
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                int index = setPrices(statement, stock, batch.day(i), batch.open(i), batch.high(i), batch.low(i),
+                        batch.close(i), batch.volume(i));
+                statement.setNull(index++, Types.INTEGER);
+                statement.setNull(index++, Types.REAL);
+                statement.setNull(index, Types.REAL);
+                statement.addBatch();
+                lastDay = Math.max(lastDay, batch.day(i));
+            }
+            statement.executeBatch();
+            rows += batch.size();
+            uncommitted += batch.size();
+
+            if (uncommitted >= rowsPerTransaction) {
+                connection.commit();
+                uncommitted = 0;
+            }
+            if (progress != null) {
+                progress.update(stock, rows, bytesRead, totalBytes);
+            }
+        }
+
+    }
+
+
+    /**
+     * The cumulative sums of the most recent kept row of a stock, and the reference price they are relative to.
+     */
+    private static class KeptSums {
+
+        private long rows;
+        private double delta;
+        private double deltaSq;
+        private double reference;
+
+    }
+
+
+    /**
+     * The last ingested version of a stock's .csv file.
+     */
+    private static class IngestState {
+
+        private final String checksum;
+        private final int lastDay;
+
+
+        private IngestState(String checksum, int lastDay) {
+            this.checksum = checksum;
+            this.lastDay = lastDay;
+        }
+
+    }
+
+
+    /**
+     * Closes all connections to the database.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+
 }
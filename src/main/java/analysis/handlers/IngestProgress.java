@@ -0,0 +1,20 @@
+package analysis.handlers;
+
+/**
+ * An interface for receiving the progress of a streamed ingestion, such as to report it for very large .csv
+ * files.
+ */
+@FunctionalInterface
+public interface IngestProgress {
+
+    /**
+     * Receives the progress of a streamed ingestion after every written batch of rows.
+     * @param stock the stock ticker being ingested
+     * @param rows the number of rows written so far
+     * @param bytesRead the number of bytes of the file read so far, ahead of the written rows by at most the
+     *                  buffered input
+     * @param totalBytes the size of the file in bytes
+     */
+    void update(String stock, long rows, long bytesRead, long totalBytes);
+
+}
@@ -0,0 +1,183 @@
+package analysis.handlers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+
+/**
+ * A class that ingests many .csv files into a storage as a pipeline. Files are parsed concurrently on a
+ * bounded pool of threads, while the calling thread is the single writer, batching the parsed rows of as many
+ * files as are ready into one write. SQLite only allows one writer, so parsing is where the parallelism
+ * comes from.
+ */
+public class IngestionPipeline {
+
+    /**
+     * Rows written at once before the writer commits, unless a single file is larger
+     */
+    private static final int ROWS_PER_BATCH = 100_000;
+
+    private final StorageHandler storageHandler;
+    private final int parallelism;
+    private final Predicate<List<CsvUpdate>> writer;
+    private final int rowsPerBatch;
+
+
+    /**
+     * A class that ingests many .csv files into a storage as a pipeline.
+     * @param storageHandler the storage to write to
+     * @param parallelism the number of threads parsing files
+     */
+    public IngestionPipeline(StorageHandler storageHandler, int parallelism) {
+        this(storageHandler, parallelism, storageHandler::writeUpdates, ROWS_PER_BATCH);
+    }
+
+
+    /**
+     * A class that ingests many .csv files into a storage as a pipeline, writing them with the given writer
+     * instead of the writeUpdates method of the storage, such as with a different profile.
+     * @param storageHandler the storage to prepare updates with
+     * @param parallelism the number of threads parsing files
+     * @param writer writes a batch of updates, all or none of them, returning whether they were written
+     * @param rowsPerBatch the rows up to which files that are ready are batched into one write, 0 to write every
+     *                     file on its own
+     */
+    IngestionPipeline(StorageHandler storageHandler, int parallelism, Predicate<List<CsvUpdate>> writer,
+                      int rowsPerBatch) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.storageHandler = storageHandler;
+        this.parallelism = parallelism;
+        this.writer = writer;
+        this.rowsPerBatch = rowsPerBatch;
+    }
+
+
+    /**
+     * Ingests the given .csv files, skipping unchanged ones. Returns once all files are written.
+     * @param files the .csv files to be read from
+     * @return for each file in the given order, whether data from it was written, it is unchanged, or it could
+     *         not be ingested
+     */
+    public Map<File, UpdateResult> run(List<File> files) {
+        Map<File, UpdateResult> updated = new LinkedHashMap<>();
+        for (File file : files) {
+            updated.put(file, UpdateResult.FAILED);
+        }
+        if (files.isEmpty()) {
+            return updated;
+        }
+
+        // Parse files concurrently, handing results to the writer through a bounded queue
+        BlockingQueue<Parsed> parsed = new LinkedBlockingQueue<>(parallelism * 2);
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (File file : files) {
+                parsers.execute(() -> {
+                    Parsed result;
+                    try {
+                        result = new Parsed(file, storageHandler.prepareUpdate(file), false);
+                    }
+                    catch (RuntimeException e) {
+                        System.out.println(e.getMessage());
+                        result = new Parsed(file, null, true);
+                    }
+                    try {
+                        parsed.put(result);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            // Write parsed files as they arrive, batching all that are ready into one write
+            int received = 0;
+            while (received < files.size()) {
+                List<Parsed> batch = new ArrayList<>();
+                batch.add(parsed.take());
+                received++;
+                int rows = batch.get(0).rows();
+                while (rows < rowsPerBatch && received < files.size()) {
+                    Parsed next = parsed.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    received++;
+                    rows += next.rows();
+                }
+                write(batch, updated);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            parsers.shutdownNow();
+        }
+
+        return updated;
+    }
+
+
+    /**
+     * Writes a batch of parsed files at once.
+     * @param batch the parsed files
+     * @param updated the map recording the outcome of each file, failed until written
+     */
+    private void write(List<Parsed> batch, Map<File, UpdateResult> updated) {
+        List<CsvUpdate> updates = new ArrayList<>();
+        for (Parsed result : batch) {
+            if (result.update != null) {
+                updates.add(result.update);
+            } else if (!result.failed) {
+                updated.put(result.file, UpdateResult.UNCHANGED);
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        if (writer.test(updates)) {
+            for (Parsed result : batch) {
+                if (result.update != null) {
+                    updated.put(result.file, UpdateResult.WRITTEN);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A parsed file, with its update if it has to be written, or whether it could not be parsed.
+     */
+    private static class Parsed {
+
+        private final File file;
+        private final CsvUpdate update;
+        private final boolean failed;
+
+
+        private Parsed(File file, CsvUpdate update, boolean failed) {
+            this.file = file;
+            this.update = update;
+            this.failed = failed;
+        }
+
+
+        private int rows() {
+            return update == null ? 0 : update.rows().size();
+        }
+
+    }
+
+}
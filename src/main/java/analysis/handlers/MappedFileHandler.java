@@ -0,0 +1,436 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.IndicatorEngine;
+import analysis.indicators.PriceSeries;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * A class that stores the price history of each stock in a binary file of fixed-width records, ordered by date
+ * ascending, and reads it through a memory mapping. Analyses run directly over the mapped buffer, without
+ * copying prices onto the heap.
+ * <p>
+ * Each file starts with a header of 64 bytes holding a magic number, a version, the number of records and the
+ * checksum of the ingested .csv file, followed by records of 48 bytes: the date as epoch day int, 4 bytes of
+ * padding so that the following values are aligned, the Open, High, Low and Close prices as doubles, and the
+ * Volume as long. All values are little-endian. New files are written to a temporary file and moved into place.
+ * Appended records are written in place past the kept records, and only counted once the header is updated, so
+ * that readers of the previous mapping keep seeing its records, except for the revised ones of the first date
+ * of the update. Files written by the first version, which have no record count, are still read.
+ */
+public class MappedFileHandler implements StorageHandler {
+
+    private static final String EXTENSION = ".bin";
+    private static final int MAGIC = 0x4F484C43; // "OHLC"
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CHECKSUM_OFFSET = 16;
+    private static final int LEGACY_CHECKSUM_OFFSET = 12;
+    private static final int MAX_CHECKSUM_LENGTH = HEADER_SIZE - CHECKSUM_OFFSET;
+    private static final int RECORD_SIZE = 48;
+    private static final int CHUNK_RECORDS = 4096;
+    private static final int DAY_OFFSET = 0;
+    private static final int OPEN_OFFSET = 8;
+    private static final int HIGH_OFFSET = 16;
+    private static final int LOW_OFFSET = 24;
+    private static final int CLOSE_OFFSET = 32;
+    private static final int VOLUME_OFFSET = 40;
+
+    private final Path directory;
+    private final Map<String, MappedPriceSeries> series = new ConcurrentHashMap<>();
+    private final TickerRegistry registry = new TickerRegistry();
+    private final List<UpdateListener> listeners = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * A class that stores the price history of each stock in a memory-mapped binary file.
+     * @param directory the directory of the binary files, which is created if it does not exist
+     */
+    public MappedFileHandler(String directory) {
+        this.directory = Path.of(directory);
+
+        // Map all existing files once, they are kept up to date by updates afterwards
+        try {
+            Files.createDirectories(this.directory);
+            try (Stream<Path> files = Files.list(this.directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(EXTENSION)) {
+                        String stock = fileName.substring(0, fileName.length() - EXTENSION.length());
+                        series.put(stock, map(file));
+                        registry.add(stock);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Reads the rows of a .csv file that still have to be written. Files whose checksum matches the stored
+     * version are skipped. Otherwise, only rows on or after the most recent stored date are kept, since files
+     * are expected to only grow by appending new dates.
+     * @param file .csv file to be read from
+     * @return the update to be written, null if the file is unchanged
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    @Override
+    public CsvUpdate prepareUpdate(File file) {
+        String stock = StorageHandler.stockOf(file);
+        MappedPriceSeries current = series.get(stock);
+        try {
+            // Skip unchanged files
+            String checksum = CsvUpdate.checksum(file);
+            if (current != null && current.checksum.equals(checksum)) {
+                return null;
+            }
+
+            // Append from the most recent stored date if there is one, replace everything otherwise
+            Integer fromDay = current == null || current.size() == 0 ? null : current.lastDate();
+            PriceRows rows = PriceRows.parse(file.getPath(), fromDay == null ? Integer.MIN_VALUE : fromDay);
+            return new CsvUpdate(stock, checksum, fromDay, rows);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Writes the given updates. The records of all updates are written first, and the headers counting them
+     * once every one of them was written, moving new files into place. A failed update leaves the headers of
+     * all files as they were, but may leave the revised records of the first date of an update, which are
+     * written again by the next update.
+     * @param updates the updates to be written
+     * @return true if the updates were written, false if a file could not be written
+     */
+    @Override
+    public synchronized boolean writeUpdates(List<CsvUpdate> updates) {
+        List<Path> written = new ArrayList<>();
+        int[] records = new int[updates.size()];
+        try {
+            for (int i = 0; i < updates.size(); i++) {
+                CsvUpdate update = updates.get(i);
+                if (update.checksum().getBytes(StandardCharsets.US_ASCII).length > MAX_CHECKSUM_LENGTH) {
+                    throw new IllegalArgumentException("Checksum too long: " + update.checksum());
+                }
+                written.add(fileOf(update));
+                records[i] = writeRecords(written.get(i), update);
+            }
+
+            // Count the written records, move new files into place and map them
+            for (int i = 0; i < updates.size(); i++) {
+                String stock = updates.get(i).stock();
+                Path target = directory.resolve(stock + EXTENSION);
+                writeHeader(written.get(i), updates.get(i).checksum(), records[i]);
+                if (!written.get(i).equals(target)) {
+                    Files.move(written.get(i), target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                series.put(stock, map(target));
+                registry.add(stock);
+                for (UpdateListener listener : listeners) {
+                    listener.updated(stock);
+                }
+            }
+            return true;
+        }
+        catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            for (int i = 0; i < written.size(); i++) {
+                if (!written.get(i).equals(directory.resolve(updates.get(i).stock() + EXTENSION))) {
+                    try {
+                        Files.deleteIfExists(written.get(i));
+                    }
+                    catch (IOException ignored) {
+                        // Leftover temporary files are overwritten by the next update
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * Gets the file the records of an update are written to: the mapped file of the stock if records are kept,
+     * an empty temporary file otherwise.
+     * @param update the update to be written
+     * @return the file to write the records to
+     * @throws IOException if a leftover temporary file cannot be deleted
+     */
+    private Path fileOf(CsvUpdate update) throws IOException {
+        if (keptRecords(update) > 0) {
+            return directory.resolve(update.stock() + EXTENSION);
+        }
+        Path temporary = directory.resolve(update.stock() + EXTENSION + ".tmp");
+        Files.deleteIfExists(temporary);
+        return temporary;
+    }
+
+
+    /**
+     * Gets the number of stored records of a stock kept by an update, which are those before its first date.
+     * @param update the update to be written
+     * @return the number of kept records, 0 if all data of the stock is replaced
+     */
+    private int keptRecords(CsvUpdate update) {
+        MappedPriceSeries current = series.get(update.stock());
+        return current == null || update.fromDay() == null ? 0 : current.indexOf(update.fromDay());
+    }
+
+
+    /**
+     * Writes the rows of an update in date order past the kept records of a file, a chunk at a time, without
+     * changing its header. Only the written part of the file is touched, so that appending does not depend on
+     * the number of kept records.
+     * @param file the file to write the records to
+     * @param update the update to be written
+     * @return the number of records of the file, including the kept ones
+     * @throws IOException if the file cannot be written
+     */
+    private int writeRecords(Path file, CsvUpdate update) throws IOException {
+        int kept = keptRecords(update);
+        PriceRows rows = update.rows();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        // New records, skipping duplicates of the same date
+        int previousDay = kept > 0 ? series.get(update.stock()).date(kept - 1) : Integer.MIN_VALUE;
+        int records = kept;
+        long position = HEADER_SIZE + (long) kept * RECORD_SIZE;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int index : rows.dateOrder()) {
+                int day = rows.day(index);
+                if (records > 0 && day == previousDay) {
+                    continue;
+                }
+                if (!chunk.hasRemaining()) {
+                    position = writeChunk(channel, chunk, position);
+                }
+                int offset = chunk.position();
+                chunk.putInt(offset + DAY_OFFSET, day);
+                chunk.putDouble(offset + OPEN_OFFSET, rows.open(index));
+                chunk.putDouble(offset + HIGH_OFFSET, rows.high(index));
+                chunk.putDouble(offset + LOW_OFFSET, rows.low(index));
+                chunk.putDouble(offset + CLOSE_OFFSET, rows.close(index));
+                chunk.putLong(offset + VOLUME_OFFSET, Math.round(rows.volume(index)));
+                chunk.position(offset + RECORD_SIZE);
+                previousDay = day;
+                records++;
+            }
+            writeChunk(channel, chunk, position);
+            channel.force(false);
+        }
+        return records;
+    }
+
+
+    /**
+     * Writes the filled part of a chunk of records at a position of a file, and empties the chunk.
+     * @param channel the channel of the file
+     * @param chunk the chunk of records
+     * @param position the position in the file, in bytes
+     * @return the position after the written records
+     * @throws IOException if the file cannot be written
+     */
+    private static long writeChunk(FileChannel channel, ByteBuffer chunk, long position) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            position += channel.write(chunk, position);
+        }
+        chunk.clear();
+        return position;
+    }
+
+
+    /**
+     * Writes the header of a file, which makes the given number of records readable.
+     * @param file the file
+     * @param checksum the checksum of the ingested .csv file
+     * @param records the number of records
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeHeader(Path file, String checksum, int records) throws IOException {
+        byte[] bytes = checksum.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(records).putInt(bytes.length).put(bytes);
+        header.position(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            writeChunk(channel, header, 0);
+            channel.force(false);
+        }
+    }
+
+
+    /**
+     * Maps a binary file read-only and validates its header.
+     * @param file the binary file
+     * @return the mapped price series
+     * @throws IOException if the file cannot be read or is not a valid binary file
+     */
+    private static MappedPriceSeries map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION && buffer.getInt(4) != LEGACY_VERSION) {
+                throw new IOException("Not a valid price file: " + file);
+            }
+            int version = buffer.getInt(4);
+
+            // Files of the first version hold exactly their records, and their checksum right after its length
+            long records = version == VERSION ? buffer.getInt(8) : (buffer.limit() - HEADER_SIZE) / RECORD_SIZE;
+            long length = HEADER_SIZE + records * RECORD_SIZE;
+            if (records < 0 || length > buffer.limit()
+                    || version == LEGACY_VERSION && length != buffer.limit()) {
+                throw new IOException("Not a valid price file: " + file);
+            }
+            int checksumOffset = version == VERSION ? CHECKSUM_OFFSET : LEGACY_CHECKSUM_OFFSET;
+
+            // Records past the counted ones are left over by failed updates
+            byte[] checksum = new byte[Math.min(buffer.getInt(checksumOffset - 4), HEADER_SIZE - checksumOffset)];
+            buffer.get(checksumOffset, checksum);
+            buffer.limit((int) length);
+            return new MappedPriceSeries(buffer, new String(checksum, StandardCharsets.US_ASCII));
+        }
+    }
+
+
+    @Override
+    public void addUpdateListener(UpdateListener listener) {
+        listeners.add(listener);
+    }
+
+
+    @Override
+    public List<String> getAvailableStocks() {
+        return registry.list();
+    }
+
+
+    @Override
+    public boolean isAvailable(String stock) {
+        return registry.contains(stock);
+    }
+
+
+    /**
+     * Gets the full Close price history of a valid stock ticker as a view of its mapped file, without copying.
+     * @param stock the stock ticker to load
+     * @return the price series of the stock if it is valid, null otherwise
+     */
+    @Override
+    public PriceSeries getPriceSeries(String stock) {
+        return isAvailable(stock) ? series.get(stock) : null;
+    }
+
+
+    @Override
+    public int getLastDate(String stock) {
+        PriceSeries prices = getPriceSeries(stock);
+        return prices == null || prices.size() == 0 ? Integer.MIN_VALUE : prices.lastDate();
+    }
+
+
+    @Override
+    public float getSMA(String stock, int days) {
+        return analyze(Analyses.SMA, stock, days);
+    }
+
+
+    @Override
+    public float getEMA(String stock, int days) {
+        return analyze(Analyses.EMA, stock, days);
+    }
+
+
+    @Override
+    public float getVolatility(String stock, int days) {
+        return analyze(Analyses.Volatility, stock, days);
+    }
+
+
+    /**
+     * Calculates an analysis directly over the mapped file of a valid stock.
+     * @param analysis the analysis to be performed
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return the result of the analysis if the stock is valid, 0 otherwise
+     */
+    private float analyze(Analyses analysis, String stock, int days) {
+        PriceSeries prices = getPriceSeries(stock);
+        if (prices == null) {
+            return 0;
+        }
+        return (float) IndicatorEngine.compute(prices, EnumSet.of(analysis), days).get(analysis)[0];
+    }
+
+
+    /**
+     * Releases all mappings. They are unmapped once no series refers to them anymore.
+     */
+    @Override
+    public void close() {
+        series.clear();
+    }
+
+
+    /**
+     * A price series reading the records of a mapped binary file.
+     */
+    private static class MappedPriceSeries implements PriceSeries {
+
+        private final ByteBuffer buffer;
+        private final String checksum;
+        private final int size;
+
+
+        private MappedPriceSeries(ByteBuffer buffer, String checksum) {
+            this.buffer = buffer;
+            this.checksum = checksum;
+            this.size = (buffer.limit() - HEADER_SIZE) / RECORD_SIZE;
+        }
+
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+
+        @Override
+        public int date(int index) {
+            return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + DAY_OFFSET);
+        }
+
+
+        @Override
+        public double close(int index) {
+            return buffer.getDouble(HEADER_SIZE + index * RECORD_SIZE + CLOSE_OFFSET);
+        }
+
+    }
+
+}
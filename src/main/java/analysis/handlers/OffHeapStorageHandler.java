@@ -0,0 +1,245 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.IndicatorEngine;
+import analysis.indicators.OffHeapPriceSeries;
+import analysis.indicators.PriceSeries;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class that keeps the full price history of the stocks of a database in off-heap columns, so that all
+ * analyses run directly over memory instead of over JDBC result rows. Stocks are loaded from the database on
+ * first use or all at once with loadAll, and are then read without accessing the database. They are dropped
+ * whenever the database notifies that their data changed, whichever method wrote it, such as
+ * DatabaseHandler.bulkLoad or streamUpdate, and reloaded on next use.
+ * <p>
+ * Direct buffers count against the -XX:MaxDirectMemorySize of the JVM, which defaults to its maximum heap size,
+ * and dropped histories only release their memory once the garbage collector finds them unreferenced. Stocks
+ * are therefore only loaded while the loaded histories stay within the given budget, and are read from the
+ * database onto the heap once it is exhausted, or if the JVM cannot allocate more direct memory.
+ */
+public class OffHeapStorageHandler implements StorageHandler {
+
+    private final DatabaseHandler databaseHandler;
+    private final long maxMemory;
+    private final Map<String, OffHeapPriceSeries> series = new ConcurrentHashMap<>();
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+
+    /**
+     * A class that keeps the full price history of the stocks of a database in off-heap columns, without a
+     * budget other than the direct memory of the JVM, and listens to the updates of the database.
+     * @param databaseHandler the database to load the price histories from
+     */
+    public OffHeapStorageHandler(DatabaseHandler databaseHandler) {
+        this(databaseHandler, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * A class that keeps the full price history of the stocks of a database in off-heap columns, and listens
+     * to the updates of the database.
+     * @param databaseHandler the database to load the price histories from
+     * @param maxMemory the off-heap memory up to which stocks are loaded, in bytes; the last loaded stock may
+     *                  exceed it by its own size
+     */
+    public OffHeapStorageHandler(DatabaseHandler databaseHandler, long maxMemory) {
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + maxMemory);
+        }
+        this.databaseHandler = databaseHandler;
+        this.maxMemory = maxMemory;
+        databaseHandler.addUpdateListener(this::invalidate);
+    }
+
+
+    /**
+     * Drops the loaded history of a stock, so that it is loaded again on next use, such as when the database
+     * notifies that its data changed.
+     * @param stock the stock ticker
+     */
+    public void invalidate(String stock) {
+        // Count the generation within the lock of the stock's entry, so that no history loaded before is installed
+        series.compute(stock, (key, prices) -> {
+            generations.merge(key, 1L, Long::sum);
+            return null;
+        });
+    }
+
+
+    /**
+     * Loads the price histories of the available stocks that are not loaded yet, in alphabetical order, until the
+     * memory budget is exhausted, such as to warm up the cache before serving analyses.
+     * @return the off-heap memory held by all loaded stocks, in bytes
+     */
+    public long loadAll() {
+        for (String stock : getAvailableStocks()) {
+            if (memorySize() >= maxMemory) {
+                break;
+            }
+            getPriceSeries(stock);
+        }
+        return memorySize();
+    }
+
+
+    /**
+     * Gets the off-heap memory held by all loaded stocks.
+     * @return the size of all columns in bytes
+     */
+    public long memorySize() {
+        long size = 0;
+        for (OffHeapPriceSeries prices : series.values()) {
+            size += prices.memorySize();
+        }
+        return size;
+    }
+
+
+    @Override
+    public CsvUpdate prepareUpdate(File file) {
+        return databaseHandler.prepareUpdate(file);
+    }
+
+
+    @Override
+    public boolean writeUpdates(List<CsvUpdate> updates) {
+        return databaseHandler.writeUpdates(updates);
+    }
+
+
+    @Override
+    public void addUpdateListener(UpdateListener listener) {
+        databaseHandler.addUpdateListener(listener);
+    }
+
+
+    @Override
+    public DatabaseHandler getDatabaseHandler() {
+        return databaseHandler;
+    }
+
+
+    @Override
+    public List<String> getAvailableStocks() {
+        return databaseHandler.getAvailableStocks();
+    }
+
+
+    @Override
+    public boolean isAvailable(String stock) {
+        return databaseHandler.isAvailable(stock);
+    }
+
+
+    /**
+     * Gets the off-heap price history of a valid stock ticker, loading it from the database on first use and
+     * again after its data changed. Concurrent first uses of a stock may load it more than once, but only one
+     * history is kept. Once the memory budget is exhausted, or the JVM runs out of direct memory, the history is
+     * read from the database onto the heap instead, for this use only.
+     * @param stock the stock ticker
+     * @return the price series of the stock if it is valid, null otherwise
+     */
+    @Override
+    public PriceSeries getPriceSeries(String stock) {
+        if (!isAvailable(stock)) {
+            return null;
+        }
+        OffHeapPriceSeries prices = series.get(stock);
+        if (prices != null) {
+            return prices;
+        }
+        if (memorySize() >= maxMemory) {
+            return databaseHandler.getPriceSeries(stock);
+        }
+
+        // Load without holding the lock of the stock's entry, which other stocks may share
+        long generation = generations.getOrDefault(stock, 0L);
+        OffHeapPriceSeries loaded;
+        try {
+            loaded = databaseHandler.getOffHeapSeries(stock);
+        }
+        catch (OutOfMemoryError e) {
+            // Direct memory is limited separately from the heap, so the heap can still hold the history
+            System.out.println("Reading " + stock + " onto the heap: " + e.getMessage());
+            return databaseHandler.getPriceSeries(stock);
+        }
+        if (loaded == null) {
+            return null;
+        }
+
+        // Keep a history loaded meanwhile, and only install this one if the stock did not change while loading
+        OffHeapPriceSeries installed = series.compute(stock, (key, current) ->
+                current != null || generations.getOrDefault(key, 0L) != generation ? current : loaded);
+        return installed != null ? installed : loaded;
+    }
+
+
+    @Override
+    public int getLastDate(String stock) {
+        PriceSeries prices = getPriceSeries(stock);
+        return prices == null ? Integer.MIN_VALUE : lastDate(prices);
+    }
+
+
+    /**
+     * Gets the most recent date of a price series.
+     * @param prices the price series
+     * @return the most recent date in epoch days, Integer.MIN_VALUE if the series is empty
+     */
+    private static int lastDate(PriceSeries prices) {
+        return prices.size() == 0 ? Integer.MIN_VALUE : prices.lastDate();
+    }
+
+
+    @Override
+    public float getSMA(String stock, int days) {
+        return analyze(Analyses.SMA, stock, days);
+    }
+
+
+    @Override
+    public float getEMA(String stock, int days) {
+        return analyze(Analyses.EMA, stock, days);
+    }
+
+
+    @Override
+    public float getVolatility(String stock, int days) {
+        return analyze(Analyses.Volatility, stock, days);
+    }
+
+
+    /**
+     * Calculates an analysis directly over the off-heap columns of a valid stock.
+     * @param analysis the analysis to be performed
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return the result of the analysis if the stock is valid, 0 otherwise
+     */
+    private float analyze(Analyses analysis, String stock, int days) {
+        PriceSeries prices = getPriceSeries(stock);
+        if (prices == null) {
+            return 0;
+        }
+        return (float) IndicatorEngine.compute(prices, EnumSet.of(analysis), days).get(analysis)[0];
+    }
+
+
+    /**
+     * Drops all loaded histories, releasing their memory once no series refers to them anymore, and closes the
+     * database.
+     */
+    @Override
+    public void close() {
+        series.clear();
+        generations.clear();
+        databaseHandler.close();
+    }
+
+}
@@ -0,0 +1,371 @@
+package analysis.handlers;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A class that parses .csv files of daily quotes with the columns Date, Open, High, Low, Close and Volume,
+ * as exported by common financial data providers. Dates are expected as MM/dd/yyyy, and numbers may be quoted
+ * and use ',' to group digits, e.g. "59,357,434". Fields are parsed directly from a char buffer into primitives,
+ * so no String or date object is allocated per row.
+ */
+public class OhlcvParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Days from 0000-01-01 to 1970-01-01 in the proleptic Gregorian calendar
+     */
+    private static final long DAYS_0000_TO_1970 = 719_528;
+
+    /**
+     * Exact powers of ten, so that a decimal mantissa divided by one of them is correctly rounded
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long line;
+    private boolean started;
+
+    private int day;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private double volume;
+
+
+    /**
+     * A class that parses .csv files of daily quotes. The first line is skipped as header.
+     * @param reader the reader of the .csv file, which remains owned by the caller
+     */
+    public OhlcvParser(Reader reader) {
+        this(reader, true);
+    }
+
+
+    /**
+     * A class that parses .csv files of daily quotes, or parts of them.
+     * @param reader the reader of the .csv file, which remains owned by the caller
+     * @param header whether the first line is a header to be skipped, false for parts after the first line
+     */
+    public OhlcvParser(Reader reader, boolean header) {
+        this.reader = reader;
+        this.started = !header;
+    }
+
+
+    /**
+     * Parses the next row of the file. Blank lines are skipped.
+     * @return true if a row was parsed, false if the end of the file is reached
+     * @throws IOException if the file cannot be read, or a row is malformed
+     */
+    public boolean next() throws IOException {
+        // Skip header line
+        if (!started) {
+            skipLine();
+            started = true;
+        }
+
+        // Skip blank lines
+        int c = peek();
+        while (c == '\n' || c == '\r') {
+            skipLine();
+            c = peek();
+        }
+        if (c == -1) {
+            return false;
+        }
+
+        line++;
+        day = parseDate();
+        expect(',');
+        open = parseNumber();
+        expect(',');
+        high = parseNumber();
+        expect(',');
+        low = parseNumber();
+        expect(',');
+        close = parseNumber();
+        expect(',');
+        volume = parseNumber();
+        skipLine();
+        return true;
+    }
+
+
+    /**
+     * Gets the date of the current row.
+     * @return the date in epoch days
+     */
+    public int day() {
+        return day;
+    }
+
+
+    /**
+     * Gets the Open price of the current row.
+     * @return the Open price
+     */
+    public double open() {
+        return open;
+    }
+
+
+    /**
+     * Gets the High price of the current row.
+     * @return the High price
+     */
+    public double high() {
+        return high;
+    }
+
+
+    /**
+     * Gets the Low price of the current row.
+     * @return the Low price
+     */
+    public double low() {
+        return low;
+    }
+
+
+    /**
+     * Gets the Close price of the current row.
+     * @return the Close price
+     */
+    public double close() {
+        return close;
+    }
+
+
+    /**
+     * Gets the traded Volume of the current row.
+     * @return the Volume
+     */
+    public double volume() {
+        return volume;
+    }
+
+
+    /**
+     * Parses a date field formatted as MM/dd/yyyy, optionally quoted.
+     * @return the date in epoch days
+     * @throws IOException if the field is malformed
+     */
+    private int parseDate() throws IOException {
+        boolean quoted = skipQuote();
+        int month = parseDigits();
+        expect('/');
+        int dayOfMonth = parseDigits();
+        expect('/');
+        int year = parseDigits();
+        if (quoted) {
+            expect('"');
+        }
+        if (month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > lengthOfMonth(year, month)) {
+            throw malformed("invalid date " + month + "/" + dayOfMonth + "/" + year);
+        }
+        return (int) toEpochDay(year, month, dayOfMonth);
+    }
+
+
+    /**
+     * Parses a decimal number field, optionally quoted, signed and with ',' grouping its digits.
+     * @return the number
+     * @throws IOException if the field is malformed
+     */
+    private double parseNumber() throws IOException {
+        boolean quoted = skipQuote();
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            position++;
+        }
+
+        // Accumulate all digits into the mantissa, counting those after the decimal point
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        int c = peek();
+        while (true) {
+            if (c >= '0' && c <= '9') {
+                if (digits == 18) {
+                    throw malformed("too many digits");
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else if (!(c == ',' && quoted && scale < 0)) {
+                break;
+            }
+            position++;
+            c = peek();
+        }
+        if (digits == 0) {
+            throw malformed("number expected");
+        }
+        if (quoted) {
+            expect('"');
+        }
+
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+
+    /**
+     * Parses an unsigned integer of at most nine digits.
+     * @return the integer
+     * @throws IOException if no digit is found
+     */
+    private int parseDigits() throws IOException {
+        int value = 0;
+        int digits = 0;
+        int c = peek();
+        while (c >= '0' && c <= '9' && digits < 9) {
+            value = value * 10 + (c - '0');
+            digits++;
+            position++;
+            c = peek();
+        }
+        if (digits == 0) {
+            throw malformed("digit expected");
+        }
+        return value;
+    }
+
+
+    /**
+     * Skips an opening quote, if present.
+     * @return true if a quote was skipped
+     * @throws IOException if the file cannot be read
+     */
+    private boolean skipQuote() throws IOException {
+        if (peek() == '"') {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Consumes the expected character.
+     * @param expected the expected character
+     * @throws IOException if another character is found
+     */
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw malformed("'" + expected + "' expected");
+        }
+        position++;
+    }
+
+
+    /**
+     * Skips the rest of the current line, including its line break.
+     * @throws IOException if the file cannot be read
+     */
+    private void skipLine() throws IOException {
+        int c = peek();
+        while (c != -1 && c != '\n') {
+            position++;
+            c = peek();
+        }
+        if (c == '\n') {
+            position++;
+        }
+    }
+
+
+    /**
+     * Gets the current character without consuming it, refilling the buffer if needed.
+     * @return the current character, -1 at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+
+    /**
+     * Creates the exception for a malformed row.
+     * @param reason the reason why the row is malformed
+     * @return the exception
+     */
+    private IOException malformed(String reason) {
+        return new IOException("Malformed row " + line + ": " + reason);
+    }
+
+
+    /**
+     * Gets the number of days of a month.
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @return the number of days
+     */
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+
+    /**
+     * Checks whether a year is a leap year in the proleptic Gregorian calendar.
+     * @param year the year
+     * @return true if the year is a leap year
+     */
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+
+    /**
+     * Converts a valid, non-negative date to epoch days, as LocalDate.toEpochDay does.
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @param dayOfMonth the day of the month
+     * @return the date in epoch days
+     */
+    private static long toEpochDay(int year, int month, int dayOfMonth) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += dayOfMonth - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+}
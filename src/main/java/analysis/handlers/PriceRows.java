@@ -0,0 +1,182 @@
+package analysis.handlers;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A class that buffers parsed price rows of a single stock in primitive columns, so that parsing a .csv file
+ * can be separated from writing it to the storage.
+ */
+public class PriceRows {
+
+    private int[] days = new int[256];
+    private double[] opens = new double[256];
+    private double[] highs = new double[256];
+    private double[] lows = new double[256];
+    private double[] closes = new double[256];
+    private double[] volumes = new double[256];
+    private int size;
+
+
+    /**
+     * Parses the data from the csv file in the given path into primitive columns.
+     * @param csvPath the path from the source csv file
+     * @param fromDay the first date to keep, in epoch days; earlier rows are skipped
+     * @return the parsed rows
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static PriceRows parse(String csvPath, int fromDay) throws IOException {
+        PriceRows rows = new PriceRows();
+        try (
+                // Open reader for CSV File
+                FileReader reader = new FileReader(csvPath)
+        ) {
+            OhlcvParser parser = new OhlcvParser(reader);
+
+            // Iterate over CSV Records, skipping rows before the first date
+            while (parser.next()) {
+                if (parser.day() >= fromDay) {
+                    rows.add(parser.day(), parser.open(), parser.high(), parser.low(), parser.close(),
+                            parser.volume());
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IOException(csvPath + ": " + e.getMessage(), e);
+        }
+
+        return rows;
+    }
+
+
+    /**
+     * Appends a row.
+     * @param day the date in epoch days
+     * @param open the Open price
+     * @param high the High price
+     * @param low the Low price
+     * @param close the Close price
+     * @param volume the traded Volume
+     */
+    public void add(int day, double open, double high, double low, double close, double volume) {
+        if (size == days.length) {
+            int capacity = size * 2;
+            days = Arrays.copyOf(days, capacity);
+            opens = Arrays.copyOf(opens, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            closes = Arrays.copyOf(closes, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+        }
+        days[size] = day;
+        opens[size] = open;
+        highs[size] = high;
+        lows[size] = low;
+        closes[size] = close;
+        volumes[size] = volume;
+        size++;
+    }
+
+
+    /**
+     * Appends all rows of other parsed rows.
+     * @param rows the rows to be appended
+     */
+    public void addAll(PriceRows rows) {
+        for (int i = 0; i < rows.size; i++) {
+            add(rows.days[i], rows.opens[i], rows.highs[i], rows.lows[i], rows.closes[i], rows.volumes[i]);
+        }
+    }
+
+
+    /**
+     * Gets the number of rows.
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Gets the date of a row.
+     * @param index the index of the row
+     * @return the date in epoch days
+     */
+    public int day(int index) {
+        return days[index];
+    }
+
+
+    /**
+     * Gets the Open price of a row.
+     * @param index the index of the row
+     * @return the Open price
+     */
+    public double open(int index) {
+        return opens[index];
+    }
+
+
+    /**
+     * Gets the High price of a row.
+     * @param index the index of the row
+     * @return the High price
+     */
+    public double high(int index) {
+        return highs[index];
+    }
+
+
+    /**
+     * Gets the Low price of a row.
+     * @param index the index of the row
+     * @return the Low price
+     */
+    public double low(int index) {
+        return lows[index];
+    }
+
+
+    /**
+     * Gets the Close price of a row.
+     * @param index the index of the row
+     * @return the Close price
+     */
+    public double close(int index) {
+        return closes[index];
+    }
+
+
+    /**
+     * Gets the traded Volume of a row.
+     * @param index the index of the row
+     * @return the Volume
+     */
+    public double volume(int index) {
+        return volumes[index];
+    }
+
+
+    /**
+     * Gets the indexes of the rows in date order, without boxing. Rows of .csv files are usually ordered by date
+     * descending, but any order is accepted.
+     * @return the row indexes ordered by date ascending
+     */
+    int[] dateOrder() {
+        // Sort date and index packed into one long, the date in the high bits
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) days[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+}
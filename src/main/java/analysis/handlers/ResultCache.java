@@ -0,0 +1,154 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A class that keeps a bounded number of analysis results in memory, evicting the least recently used result
+ * once it is full. Results are keyed by stock ticker, analysis and time period, and all results of a stock must
+ * be invalidated whenever its data changes, so that a result is never returned for a different version of the
+ * data.
+ */
+public class ResultCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Double> results;
+    private long hits;
+    private long misses;
+
+
+    /**
+     * A class that keeps a bounded number of analysis results in memory.
+     * @param capacity the most results to keep
+     */
+    public ResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+
+        // Access order makes the first entry the least recently used one
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                return size() > ResultCache.this.capacity;
+            }
+        };
+    }
+
+
+    /**
+     * Gets a cached result.
+     * @param stock the stock ticker
+     * @param analysis the analysis
+     * @param days the time period
+     * @return the result, null if it is not cached
+     */
+    public synchronized Double get(String stock, Analyses analysis, int days) {
+        Double result = results.get(new Key(stock, analysis, days));
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+
+    /**
+     * Caches a result, evicting the least recently used result if the cache is full.
+     * @param stock the stock ticker
+     * @param analysis the analysis
+     * @param days the time period
+     * @param result the result
+     */
+    public synchronized void put(String stock, Analyses analysis, int days, double result) {
+        results.put(new Key(stock, analysis, days), result);
+    }
+
+
+    /**
+     * Removes all results of a stock, such as when its data is rewritten.
+     * @param stock the stock ticker
+     */
+    public synchronized void invalidate(String stock) {
+        results.keySet().removeIf(key -> key.stock.equals(stock));
+    }
+
+
+    /**
+     * Removes all results.
+     */
+    public synchronized void clear() {
+        results.clear();
+    }
+
+
+    /**
+     * Gets the number of cached results.
+     * @return the number of results
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+
+    /**
+     * Gets the number of lookups that found a result.
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+
+    /**
+     * Gets the number of lookups that found no result.
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+
+    /**
+     * The key of a cached result.
+     */
+    private static final class Key {
+
+        private final String stock;
+        private final Analyses analysis;
+        private final int days;
+
+
+        private Key(String stock, Analyses analysis, int days) {
+            this.stock = stock;
+            this.analysis = analysis;
+            this.days = days;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return days == key.days && analysis == key.analysis && stock.equals(key.stock);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stock, analysis, days);
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package analysis.handlers;
+
+import analysis.indicators.RollingVariance;
+import org.sqlite.Function;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A class that registers analysis functions implemented in Java with SQLite connections, so that analyses can
+ * be calculated in a single scan by SQLite, also in ad-hoc queries:
+ * <ul>
+ *     <li>{@code ema(close, alpha)}: the Exponential Moving Average with the given smoothing factor, seeded with
+ *     the first Close. It depends on the order of the rows, so it should be used as a window function, such as
+ *     {@code ema(Close, 0.0645) OVER (ORDER BY Day)}.</li>
+ *     <li>{@code stddev(close)}: the population standard deviation, which is the Price Volatility. It can be
+ *     used as an aggregate or as a window function over any frame.</li>
+ * </ul>
+ */
+public final class SqlFunctions {
+
+    private SqlFunctions() {
+    }
+
+
+    /**
+     * Registers all analysis functions with a connection.
+     * @param connection the SQLite connection
+     * @throws SQLException if a database access error occurs
+     */
+    public static void register(Connection connection) throws SQLException {
+        Function.create(connection, "ema", new Ema(), 2, Function.FLAG_DETERMINISTIC);
+        Function.create(connection, "stddev", new StandardDeviation(), 1, Function.FLAG_DETERMINISTIC);
+    }
+
+
+    /**
+     * The ema(close, alpha) function. SQLite clones the registered instance for every group or window, so the
+     * state is kept in primitive fields.
+     */
+    private static class Ema extends Function.Window {
+
+        private double value;
+        private boolean seeded;
+
+
+        @Override
+        protected void xStep() throws SQLException {
+            double close = value_double(0);
+            double alpha = value_double(1);
+            if (seeded) {
+                value = close * alpha + value * (1 - alpha);
+            } else {
+                value = close;
+                seeded = true;
+            }
+        }
+
+
+        @Override
+        protected void xInverse() throws SQLException {
+            // An EMA cannot forget its first prices, so the frame must start at the first row
+            error("ema() only supports frames starting at UNBOUNDED PRECEDING");
+        }
+
+
+        @Override
+        protected void xValue() throws SQLException {
+            xFinal();
+        }
+
+
+        @Override
+        protected void xFinal() throws SQLException {
+            if (seeded) {
+                result(value);
+            } else {
+                result();
+            }
+        }
+
+    }
+
+
+    /**
+     * The stddev(close) function, using Welford's algorithm. SQLite clones the registered instance for every
+     * group or window, so every clone gets its own variance.
+     */
+    private static class StandardDeviation extends Function.Window {
+
+        private RollingVariance variance = new RollingVariance();
+
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            StandardDeviation clone = (StandardDeviation) super.clone();
+            clone.variance = new RollingVariance();
+            return clone;
+        }
+
+
+        @Override
+        protected void xStep() throws SQLException {
+            variance.add(value_double(0));
+        }
+
+
+        @Override
+        protected void xInverse() throws SQLException {
+            variance.remove(value_double(0));
+        }
+
+
+        @Override
+        protected void xValue() throws SQLException {
+            xFinal();
+        }
+
+
+        @Override
+        protected void xFinal() throws SQLException {
+            if (variance.count() == 0) {
+                result();
+            } else {
+                result(variance.standardDeviation());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.IndicatorEngine;
+import analysis.indicators.IndicatorSeries;
+import analysis.indicators.PriceSeries;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An interface for the storage backends of stock prices, such as the SQLite database of DatabaseHandler or the
+ * memory-mapped files of MappedFileHandler. Stock tickers are the lower case names of their source .csv files.
+ */
+public interface StorageHandler extends AutoCloseable {
+
+    /**
+     * Updates the storage with the data in the given .csv file, skipping unchanged files.
+     * @param file .csv file to be read from
+     * @return whether data from the file was written, the file is unchanged, or the file could not be ingested
+     */
+    default UpdateResult updateDB(File file) {
+        CsvUpdate update;
+        try {
+            update = prepareUpdate(file);
+        }
+        catch (UncheckedIOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return UpdateResult.FAILED;
+        }
+        if (update == null) {
+            return UpdateResult.UNCHANGED;
+        }
+        return writeUpdates(List.of(update)) ? UpdateResult.WRITTEN : UpdateResult.FAILED;
+    }
+
+
+    /**
+     * Reads the rows of a .csv file that still have to be written. Does not write anything, and is safe to call
+     * from several threads at once, so that files can be parsed concurrently.
+     * @param file .csv file to be read from
+     * @return the update to be written, null if the file is unchanged
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws IllegalArgumentException if the name of the file does not denote a valid stock ticker
+     */
+    CsvUpdate prepareUpdate(File file);
+
+
+    /**
+     * Writes the given updates, all or none of them. Must only be called by one thread at a time.
+     * @param updates the updates to be written
+     * @return true if the updates were written, false otherwise
+     */
+    boolean writeUpdates(List<CsvUpdate> updates);
+
+
+    /**
+     * Registers a listener that is notified of every stock whose data is changed afterwards, whichever method
+     * of the storage changed it.
+     * @param listener the listener
+     */
+    void addUpdateListener(UpdateListener listener);
+
+
+    /**
+     * Gets the database the storage writes to, such as to stream large files into it with
+     * DatabaseHandler.streamUpdate. Storages that hold results or histories of the database in memory drop
+     * them when it notifies them of the streamed stocks.
+     * @return the database, null if the storage does not write to one
+     */
+    default DatabaseHandler getDatabaseHandler() {
+        return null;
+    }
+
+
+    /**
+     * Gets a list of available stock tickers. Can serve as a list of valid tickers to avoid injections.
+     * @return the list of available stock tickers in alphabetical order
+     */
+    List<String> getAvailableStocks();
+
+
+    /**
+     * Checks whether a stock ticker is available, without accessing the storage.
+     * @param stock the stock ticker
+     * @return true if the ticker is available, false otherwise
+     */
+    boolean isAvailable(String stock);
+
+
+    /**
+     * Gets the full Close price history of a valid stock ticker, ordered by date ascending.
+     * @param stock the stock ticker to load
+     * @return the price series of the stock if it is valid, null otherwise
+     */
+    PriceSeries getPriceSeries(String stock);
+
+
+    /**
+     * Gets the most recent date of a valid stock ticker, without loading its price history.
+     * @param stock the stock ticker
+     * @return the most recent date in epoch days, Integer.MIN_VALUE if the stock is invalid or has no data
+     */
+    int getLastDate(String stock);
+
+
+    /**
+     * Calculates the given analyses of a valid stock ticker in the given time periods, loading its price
+     * history once for all of them.
+     * @param analyses the analyses to be performed
+     * @param stock the stock ticker to analyze
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     * @return the results for each analysis, in the same order as the given time periods; null if the stock is
+     * invalid or has no data
+     */
+    default Map<Analyses, double[]> analyze(Set<Analyses> analyses, String stock, int... days) {
+        PriceSeries series = getPriceSeries(stock);
+        if (series == null || series.size() == 0) {
+            return null;
+        }
+        return IndicatorEngine.compute(series, analyses, days);
+    }
+
+
+    /**
+     * Calculates the given analyses of a valid stock ticker in the given time periods at every date of its
+     * history, loading the history once and walking it in a single pass.
+     * @param analyses the analyses to be performed
+     * @param stock the stock ticker to analyze
+     * @param days the time periods to be analyzed in, in past days from each date
+     * @return the values at every date, null if the stock is invalid
+     */
+    default IndicatorSeries analyzeSeries(Set<Analyses> analyses, String stock, int... days) {
+        PriceSeries series = getPriceSeries(stock);
+        if (series == null) {
+            return null;
+        }
+        return IndicatorEngine.series(series, analyses, days);
+    }
+
+
+    /**
+     * Gets the Simple Moving Average (SMA) of a stock for a valid stock ticker in the given time period,
+     * starting at the most recent data entries.
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return the Simple Moving Average of the stock if it is valid, 0 otherwise
+     */
+    float getSMA(String stock, int days);
+
+
+    /**
+     * Gets the Exponential Moving Average (EMA) of a stock for a valid stock ticker in the given time period,
+     * starting at the most recent data entries.
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return the Exponential Moving Average of the stock if it is valid, 0 otherwise
+     */
+    float getEMA(String stock, int days);
+
+
+    /**
+     * Gets the Price Volatility of a stock for a valid stock ticker in the given time period, starting at
+     * the most recent data entries.
+     * @param stock the stock ticker to analyze
+     * @param days the time period to be analyzed in, in past days from most recent entry
+     * @return the Price Volatility of the stock if it is valid, 0 otherwise
+     */
+    float getVolatility(String stock, int days);
+
+
+    /**
+     * Releases all resources held by the storage.
+     */
+    @Override
+    void close();
+
+
+    /**
+     * Gets the stock ticker of a .csv file, which is its lower case name without extension.
+     * @param file the .csv file
+     * @return the stock ticker
+     */
+    static String stockOf(File file) {
+        String fileName = file.getName().toLowerCase();
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+
+}
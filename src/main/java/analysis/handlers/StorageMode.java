@@ -0,0 +1,24 @@
+package analysis.handlers;
+
+/**
+ * An enumeration that specifies how stock prices are laid out in the database.
+ */
+public enum StorageMode {
+
+    /**
+     * One table per stock ticker, named after the ticker and keyed by a TEXT date
+     */
+    PER_TICKER,
+
+    /**
+     * One table per stock ticker, named after the ticker and keyed by an INTEGER epoch day, so that time periods
+     * are integer range seeks on the primary key. Uses the same table names as PER_TICKER, so both modes cannot
+     * share a database
+     */
+    PER_TICKER_EPOCH,
+
+    /**
+     * A single prices table for all stock tickers, clustered on the ticker and an integer epoch day
+     */
+    UNIFIED
+}
@@ -0,0 +1,294 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.PriceSeries;
+import analysis.indicators.RollingIndicators;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * A class that receives real-time price ticks and keeps the SMA, EMA and Volatility of every ticked stock up to
+ * date for the configured time periods. Ticks are lines of the form {@code TICKER,MM/dd/yyyy,Close}, read from
+ * local socket connections or from files that are appended to. Each stock is seeded once with its stored price
+ * history, after which ticks never access the storage, and the latest values can be read at any time.
+ */
+public class TickHandler implements AutoCloseable {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private static final long POLL_MILLIS = 100;
+
+    private final StorageHandler storageHandler;
+    private final int[] days;
+    private final Map<String, RollingIndicators> indicators = new ConcurrentHashMap<>();
+    private final List<Closeable> sources = new CopyOnWriteArrayList<>();
+    private final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tick-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+
+    /**
+     * A class that receives real-time price ticks and keeps the analyses of every ticked stock up to date.
+     * @param storageHandler the storage to seed stocks with their price history, or null to start from ticks only
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     */
+    public TickHandler(StorageHandler storageHandler, int... days) {
+        new RollingIndicators(days); // Validates the time periods
+        this.storageHandler = storageHandler;
+        this.days = days.clone();
+    }
+
+
+    /**
+     * Adds a tick, updating all analyses of its stock.
+     * @param stock the stock ticker
+     * @param day the date in epoch days, not before the most recent date of the stock
+     * @param close the Close price, replacing the previous one if the date is the most recent date
+     * @throws IllegalArgumentException if the date is before the most recent date of the stock
+     */
+    public void onTick(String stock, int day, double close) {
+        String key = stock.toLowerCase();
+        RollingIndicators rolling = indicators.get(key);
+        if (rolling == null) {
+            // Seed without holding the lock of the stock's entry, which other stocks may share, and keep the
+            // analyses another tick of the stock seeded meanwhile
+            RollingIndicators seeded = seed(key);
+            rolling = indicators.putIfAbsent(key, seeded);
+            if (rolling == null) {
+                rolling = seeded;
+            }
+        }
+        rolling.update(day, close);
+    }
+
+
+    /**
+     * Parses and adds a tick line of the form {@code TICKER,MM/dd/yyyy,Close}. Malformed or outdated ticks are
+     * reported and skipped.
+     * @param line the tick line
+     * @return true if the tick was added, false otherwise
+     */
+    public boolean onLine(String line) {
+        String[] fields = line.trim().split(",");
+        if (fields.length != 3 || fields[0].isBlank()) {
+            System.out.println("Malformed tick: " + line);
+            return false;
+        }
+        try {
+            int day = (int) LocalDate.parse(fields[1].trim(), DATE_FORMAT).toEpochDay();
+            onTick(fields[0].trim(), day, Double.parseDouble(fields[2].trim()));
+            return true;
+        }
+        catch (DateTimeParseException | IllegalArgumentException e) {
+            System.out.println("Skipped tick " + line + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+
+    /**
+     * Creates the rolling analyses of a stock, seeded with its stored price history if there is one. Concurrent
+     * first ticks of a stock may seed it more than once, but only one is kept.
+     * @param stock the stock ticker
+     * @return the rolling analyses of the stock
+     */
+    private RollingIndicators seed(String stock) {
+        RollingIndicators rolling = new RollingIndicators(days);
+        if (storageHandler != null && storageHandler.isAvailable(stock)) {
+            PriceSeries series = storageHandler.getPriceSeries(stock);
+            if (series != null) {
+                rolling.seed(series);
+            }
+        }
+        return rolling;
+    }
+
+
+    /**
+     * Listens for tick lines on a local port. Every connection is read on its own thread until it is closed.
+     * @param port the port on the loopback address, 0 for any free port
+     * @return the port listened on
+     * @throws IOException if the port cannot be bound
+     */
+    public int listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        sources.add(server);
+        readers.execute(() -> {
+            while (!closed) {
+                try {
+                    Socket socket = server.accept();
+                    sources.add(socket);
+                    readers.execute(() -> read(socket));
+                }
+                catch (IOException e) {
+                    if (!closed) {
+                        System.out.println(e.getMessage());
+                    }
+                    return;
+                }
+            }
+        });
+        return server.getLocalPort();
+    }
+
+
+    /**
+     * Reads tick lines from a socket connection until it is closed.
+     * @param socket the socket connection
+     */
+    private void read(Socket socket) {
+        try (
+                socket;
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+        ) {
+            String line;
+            while (!closed && (line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    onLine(line);
+                }
+            }
+        }
+        catch (IOException e) {
+            if (!closed) {
+                System.out.println(e.getMessage());
+            }
+        }
+        finally {
+            sources.remove(socket);
+        }
+    }
+
+
+    /**
+     * Follows a file like {@code tail -f}, adding every tick line appended to it from now on. The file is read
+     * from the start again if it is truncated.
+     * @param file the file to follow
+     * @throws IOException if the file cannot be opened
+     */
+    public void tail(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        sources.add(channel);
+        readers.execute(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            StringBuilder line = new StringBuilder();
+            try (channel) {
+                long position = channel.size();
+                while (!closed) {
+                    // Start over if the file was truncated
+                    if (channel.size() < position) {
+                        position = 0;
+                        line.setLength(0);
+                    }
+
+                    int read = channel.read(buffer.clear(), position);
+                    if (read <= 0) {
+                        Thread.sleep(POLL_MILLIS);
+                        continue;
+                    }
+                    position += read;
+
+                    // Add complete lines only, keeping a partial last line for the next read
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        char c = (char) buffer.get();
+                        if (c == '\n') {
+                            if (!line.toString().isBlank()) {
+                                onLine(line.toString());
+                            }
+                            line.setLength(0);
+                        } else if (c != '\r') {
+                            line.append(c);
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                if (!closed) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                sources.remove(channel);
+            }
+        });
+    }
+
+
+    /**
+     * Gets the latest value of an analysis of a stock, without accessing the storage.
+     * @param analysis the analysis
+     * @param stock the stock ticker
+     * @param days the time period, which must be one of the configured time periods
+     * @return the latest value, 0 if no tick was received for the stock
+     * @throws IllegalArgumentException if the time period is not configured
+     */
+    public double getLatest(Analyses analysis, String stock, int days) {
+        RollingIndicators rolling = indicators.get(stock.toLowerCase());
+        return rolling == null ? 0 : rolling.value(analysis, days);
+    }
+
+
+    /**
+     * Gets the rolling analyses of a stock, to read all time periods at once.
+     * @param stock the stock ticker
+     * @return the rolling analyses, null if no tick was received for the stock
+     */
+    public RollingIndicators getIndicators(String stock) {
+        return indicators.get(stock.toLowerCase());
+    }
+
+
+    /**
+     * Gets a list of stocks that received ticks.
+     * @return the list of stock tickers in alphabetical order
+     */
+    public List<String> getStocks() {
+        return indicators.keySet().stream().sorted().collect(Collectors.toList());
+    }
+
+
+    /**
+     * Stops reading from all sources.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Closeable source : sources) {
+            try {
+                source.close();
+            }
+            catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        readers.shutdownNow();
+    }
+
+}
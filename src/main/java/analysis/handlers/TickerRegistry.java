@@ -0,0 +1,99 @@
+package analysis.handlers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class that keeps the set of stock tickers available in the database in memory. It is loaded once from
+ * the database metadata and kept up to date by the DatabaseHandler, so that validating a ticker against
+ * injections costs a hash lookup instead of a metadata scan.
+ */
+public class TickerRegistry {
+
+    private final Set<String> tickers = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * Replaces the registered tickers with the stock tickers stored in the database.
+     * @param connection the database connection
+     * @param mode the layout of the stock prices in the database
+     * @throws SQLException if a database access error occurs
+     */
+    public void load(Connection connection, StorageMode mode) throws SQLException {
+        Set<String> loaded = new HashSet<>();
+        if (mode == StorageMode.UNIFIED) {
+            // Get distinct tickers from the primary key of the prices table
+            try (
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(
+                            "SELECT DISTINCT Ticker FROM " + DatabaseHandler.PRICES_TABLE)
+            ) {
+                while (resultSet.next()) {
+                    loaded.add(resultSet.getString(1));
+                }
+            }
+        } else {
+            // Get table names from Metadata, excluding system, internal and staging tables
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, "%", new String[]{"TABLE"})) {
+                while (tables.next()) {
+                    String table = tables.getString("TABLE_NAME");
+                    if (!DatabaseHandler.INTERNAL_TABLES.contains(table)
+                            && !table.startsWith(DatabaseHandler.STAGING_PREFIX)) {
+                        loaded.add(table);
+                    }
+                }
+            }
+        }
+
+        tickers.clear();
+        tickers.addAll(loaded);
+    }
+
+
+    /**
+     * Checks whether a stock ticker is available in the database.
+     * @param stock the stock ticker
+     * @return true if the ticker is available, false otherwise
+     */
+    public boolean contains(String stock) {
+        return stock != null && tickers.contains(stock);
+    }
+
+
+    /**
+     * Registers a stock ticker whose table was created in the database.
+     * @param stock the stock ticker
+     */
+    public void add(String stock) {
+        tickers.add(stock);
+    }
+
+
+    /**
+     * Unregisters a stock ticker whose table was removed from the database.
+     * @param stock the stock ticker
+     */
+    public void remove(String stock) {
+        tickers.remove(stock);
+    }
+
+
+    /**
+     * Gets the registered stock tickers in alphabetical order.
+     * @return a snapshot of the registered tickers
+     */
+    public List<String> list() {
+        List<String> list = new ArrayList<>(tickers);
+        Collections.sort(list);
+        return list;
+    }
+
+}
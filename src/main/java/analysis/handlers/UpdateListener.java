@@ -0,0 +1,16 @@
+package analysis.handlers;
+
+/**
+ * An interface for being notified of the stocks whose data was changed in a storage, such as to drop results
+ * held in memory for them.
+ */
+@FunctionalInterface
+public interface UpdateListener {
+
+    /**
+     * Receives a stock whose data was changed, once the change is visible to all reads of the storage.
+     * @param stock the stock ticker
+     */
+    void updated(String stock);
+
+}
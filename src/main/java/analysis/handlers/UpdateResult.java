@@ -0,0 +1,22 @@
+package analysis.handlers;
+
+/**
+ * An enumeration that specifies the outcome of updating a storage with a .csv file.
+ */
+public enum UpdateResult {
+
+    /**
+     * Data from the file was written
+     */
+    WRITTEN,
+
+    /**
+     * The file is unchanged since it was last written, so nothing was written
+     */
+    UNCHANGED,
+
+    /**
+     * The file could not be read or written, so nothing of it was written
+     */
+    FAILED
+}
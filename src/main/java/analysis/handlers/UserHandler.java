@@ -2,32 +2,37 @@ package analysis.handlers;
 import analysis.Analyses;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
- * A class that handles all interactions between user and DatabaseHandler, such as prompting,
+ * A class that handles all interactions between user and storage, such as prompting,
  * forwarding calls to procedures and outputting results.
  */
 public class UserHandler {
 
-    private final DatabaseHandler dbHandler;
+    private final StorageHandler storageHandler;
 
 
     /**
-     * A class that handles all relations between the user and the DatabaseHandler, such as prompting,
+     * A class that handles all relations between the user and the storage, such as prompting,
      * forwarding calls to procedures and outputting results.
-     * @param dbHandler the DatabaseHandler
+     * @param storageHandler the storage of stock prices
      */
-    public UserHandler(DatabaseHandler dbHandler) {
-        this.dbHandler = dbHandler;
+    public UserHandler(StorageHandler storageHandler) {
+        this.storageHandler = storageHandler;
     }
 
 
     /**
      * Calls updates to the database using the .csv files in the specified path, if the path denotes
-     * an existing directory. Updates overwrite existing tables.
+     * an existing directory. Unchanged files are skipped, and changed files only append their new dates.
      * @param path the path of the source .csv files
      */
     public void updateDB(String path) {
@@ -35,20 +40,91 @@ public class UserHandler {
         File dir = new File(path);
         if (!dir.exists() || !dir.isDirectory()) {
             System.out.println("Directory does not exist");
+            return;
         }
 
         // Update the database with all .csv files in the given path
+        Map<File, UpdateResult> updated = new LinkedHashMap<>();
         for (File file : Objects.requireNonNull(dir.listFiles())) {
             if (file.getName().endsWith(".csv")) {
-                dbHandler.updateDB(file);
-                System.out.println("Data successfully updated with file: " + file.getName());
+                updated.put(file, storageHandler.updateDB(file));
             }
         }
-        System.out.println("Database successfully updated.");
+        printUpdates(updated);
+    }
+
+
+    /**
+     * Calls updates to the database using the .csv files in the specified path, if the path denotes
+     * an existing directory. Files are parsed concurrently by the given number of threads, while a single
+     * writer stores them. Unchanged files are skipped, and changed files only append their new dates.
+     * @param path the path of the source .csv files
+     * @param parallelism the number of threads parsing files
+     */
+    public void updateDB(String path, int parallelism) {
+        // Handles invalid path
+        File dir = new File(path);
+        if (!dir.exists() || !dir.isDirectory()) {
+            System.out.println("Directory does not exist");
+            return;
+        }
+
+        // Collect all .csv files in the given path
+        List<File> files = new ArrayList<>();
+        for (File file : Objects.requireNonNull(dir.listFiles())) {
+            if (file.getName().endsWith(".csv")) {
+                files.add(file);
+            }
+        }
+
+        // Update the database with all files through the pipeline
+        printUpdates(new IngestionPipeline(storageHandler, parallelism).run(files));
+    }
+
+
+    /**
+     * Prints the outcome of updating the database with each file, and whether any file failed.
+     * @param updated the outcome of each file
+     */
+    private void printUpdates(Map<File, UpdateResult> updated) {
+        int failed = 0;
+        for (Map.Entry<File, UpdateResult> entry : updated.entrySet()) {
+            String name = entry.getKey().getName();
+            switch (entry.getValue()) {
+                case WRITTEN:
+                    System.out.println("Data successfully updated with file: " + name);
+                    break;
+                case UNCHANGED:
+                    System.out.println("No new data in file: " + name);
+                    break;
+                default:
+                    System.out.println("Failed to update data with file: " + name);
+                    failed++;
+            }
+        }
+        if (failed == 0) {
+            System.out.println("Database successfully updated.");
+        } else {
+            System.out.println("Database updated, except for " + failed + " failed file(s).");
+        }
         System.out.println();
     }
 
 
+    /**
+     * Starts updating the database in the background, like updateDB with the given number of threads parsing
+     * files. Analyses can run meanwhile, reading the previous data of each stock until its update is written.
+     * @param path the path of the source .csv files
+     * @param parallelism the number of threads parsing files
+     * @return the started thread, to be joined to wait for the update
+     */
+    public Thread updateDBInBackground(String path, int parallelism) {
+        Thread thread = new Thread(() -> updateDB(path, parallelism), "database-update");
+        thread.start();
+        return thread;
+    }
+
+
     /**
      * Prompts the user for a stock ticker. Only allows tickers existing in the database to avoid injections
      * in following uses.
@@ -56,7 +132,7 @@ public class UserHandler {
      */
     public String getStockTicker() {
         // Get available stock tickers based on existing table names
-        List<String> availableStocks = dbHandler.getAvailableStocks();
+        List<String> availableStocks = storageHandler.getAvailableStocks();
 
         // Handles empty database
         if (availableStocks == null || availableStocks.isEmpty()) {
@@ -70,7 +146,7 @@ public class UserHandler {
         do {
             System.out.println("Please enter stock ticker (" + availableStocks + "): ");
             stock = scanner.nextLine();
-        } while (!availableStocks.contains(stock));
+        } while (!storageHandler.isAvailable(stock));
         System.out.println();
 
         return stock;
@@ -85,44 +161,38 @@ public class UserHandler {
      * @param days the time periods to be analyzed in, in past days from most recent entry
      */
     public void analyze(Analyses analysis, String stock, int... days) {
-        if (days.length == 0) { // If no time period is given, return at once
-            return;
-        }
+        analyze(EnumSet.of(analysis), stock, days);
+    }
 
-        // Get analyses
-        int n = days.length;
-        float[] results = new float[n];
-
-        switch (analysis) {
-            case SMA:
-                for (int i = 0; i < n; i++) {
-                    results[i] = dbHandler.getSMA(stock, days[i]);
-                }
-                break;
-            case EMA:
-                for (int i = 0; i < n; i++) {
-                    results[i] = dbHandler.getEMA(stock, days[i]);
-                }
-                break;
-            case Volatility:
-                for (int i = 0; i < n; i++) {
-                    results[i] = dbHandler.getVolatility(stock, days[i]);
-                }
-                break;
+
+    /**
+     * Prints the given analyses for a given valid stock in the given time periods, starting
+     * at the most recent data entry. The price history of the stock is read only once for all analyses.
+     * @param analyses analyses to be performed
+     * @param stock the stock to be analyzed
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     */
+    public void analyze(Set<Analyses> analyses, String stock, int... days) {
+        if (days.length == 0 || analyses.isEmpty()) { // If no time period or analysis is given, return at once
+            return;
         }
 
-        if (results[0] == 0) { // If stock is invalid, return at once
+        // Calculate all time periods at once, loading the price history only if needed
+        Map<Analyses, double[]> results = storageHandler.analyze(analyses, stock, days);
+        if (results == null) { // If stock is invalid, return at once
             System.out.println("No data found for given stock: " + stock);
             return;
         }
 
         // Print results
-        System.out.println(analysis + ":");
-        for (int i = 0; i < days.length; i++) {
-            System.out.printf("%d days: %.2f", days[i], results[i]);
+        for (Map.Entry<Analyses, double[]> result : results.entrySet()) {
+            System.out.println(result.getKey() + ":");
+            for (int i = 0; i < days.length; i++) {
+                System.out.printf("%d days: %.2f", days[i], result.getValue()[i]);
+                System.out.println();
+            }
             System.out.println();
         }
-        System.out.println();
     }
 
 }
@@ -0,0 +1,56 @@
+package analysis.indicators;
+
+/**
+ * A class that holds the Close price history of a single stock in primitive arrays, ordered by date ascending.
+ */
+public class ArrayPriceSeries implements PriceSeries {
+
+    private final int[] dates;
+    private final double[] closes;
+    private final int size;
+
+
+    /**
+     * A class that holds the Close price history of a single stock in primitive arrays, ordered by date ascending.
+     * Only the first {@code size} entries of the given arrays are used.
+     * @param dates the dates of the entries, in epoch days, ordered ascending
+     * @param closes the Close prices of the entries
+     * @param size the number of valid entries
+     */
+    public ArrayPriceSeries(int[] dates, double[] closes, int size) {
+        if (dates.length < size || closes.length < size) {
+            throw new IllegalArgumentException("Arrays are shorter than the given size: " + size);
+        }
+        this.dates = dates;
+        this.closes = closes;
+        this.size = size;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public int date(int index) {
+        return dates[index];
+    }
+
+
+    @Override
+    public double close(int index) {
+        return closes[index];
+    }
+
+
+    /**
+     * Gets the array of Close prices, such as to reduce windows of it with the window kernels.
+     * @return the Close prices, shared with this series and possibly longer than it
+     */
+    double[] closes() {
+        return closes;
+    }
+
+}
@@ -0,0 +1,98 @@
+package analysis.indicators;
+
+/**
+ * A class that calculates the Exponential Moving Average (EMA) of a stream of Close prices, walking them in
+ * date order once and keeping a single accumulator. The first price seeds the average.
+ */
+public class ExponentialMovingAverage {
+
+    private final double alpha;
+    private double value;
+    private double previous;
+    private boolean seeded;
+    private boolean hasPrevious;
+
+
+    /**
+     * A class that calculates the Exponential Moving Average (EMA) of a stream of Close prices.
+     * @param days the time period of the average, which sets the smoothing factor to 2 / (days + 1)
+     */
+    public ExponentialMovingAverage(int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("Time period must be positive: " + days);
+        }
+        this.alpha = 2 / (double) (days + 1);
+    }
+
+
+    /**
+     * Adds the next Close price, in date order, to the average.
+     * @param close the Close price
+     * @return the updated average
+     */
+    public double update(double close) {
+        previous = value;
+        hasPrevious = seeded;
+        if (seeded) {
+            value = close * alpha + value * (1 - alpha);
+        } else {
+            value = close;
+            seeded = true;
+        }
+        return value;
+    }
+
+
+    /**
+     * Replaces the most recently added Close price, such as when the Close price of the current day changes.
+     * @param close the new Close price
+     * @return the updated average
+     * @throws IllegalStateException if no price has been added yet
+     */
+    public double revise(double close) {
+        if (!seeded) {
+            throw new IllegalStateException("No price to revise");
+        }
+        value = hasPrevious ? close * alpha + previous * (1 - alpha) : close;
+        return value;
+    }
+
+
+    /**
+     * Gets the current value of the average.
+     * @return the current average, 0 if no price has been added yet
+     */
+    public double value() {
+        return value;
+    }
+
+
+    /**
+     * Discards all added prices, so that the next price seeds the average again.
+     */
+    public void reset() {
+        value = 0;
+        previous = 0;
+        seeded = false;
+        hasPrevious = false;
+    }
+
+
+    /**
+     * Calculates the whole EMA series over a range of a price series in a single pass.
+     * @param series the price series
+     * @param from the index of the first entry, which seeds the average
+     * @param to the index after the last entry
+     * @param days the time period of the average
+     * @return the average at every entry of the range, in date order
+     */
+    public static double[] series(PriceSeries series, int from, int to, int days) {
+        ExponentialMovingAverage ema = new ExponentialMovingAverage(days);
+        double[] values = new double[to - from];
+        for (int i = from; i < to; i++) {
+            values[i - from] = ema.update(series.close(i));
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,236 @@
+package analysis.indicators;
+
+import analysis.Analyses;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class that calculates all requested analyses for all requested time periods from a single, in-memory
+ * price series. SMA and Volatility are reduced over each time period with the window kernels, which are
+ * vectorized where the Vector API is available; Volatility takes the two-pass variance, so that it stays
+ * accurate where subtracting sums of squares would cancel out. The EMAs of all time periods are advanced
+ * together in one pass over the longest time period.
+ */
+public class IndicatorEngine {
+
+    private IndicatorEngine() {
+    }
+
+
+    /**
+     * Calculates the given analyses of a price series in the given time periods, starting at the most
+     * recent entry. Time periods follow the same bounds as the SQL queries in DatabaseHandler: SMA and EMA
+     * cover the dates after the start of the period, Volatility includes the start date itself.
+     * @param series the price series to analyze
+     * @param analyses the analyses to be performed
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     * @return the results for each analysis, in the same order as the given time periods; all results are 0
+     * if the series is empty
+     */
+    public static Map<Analyses, double[]> compute(PriceSeries series, Set<Analyses> analyses, int... days) {
+        Map<Analyses, double[]> results = new EnumMap<>(Analyses.class);
+        for (Analyses analysis : analyses) {
+            results.put(analysis, new double[days.length]);
+        }
+
+        int n = series.size();
+        if (n == 0 || days.length == 0) { // If there is no data or time period, return at once
+            return results;
+        }
+
+        // Resolve the first index of each time period
+        int lastDate = series.lastDate();
+        int[] exclusiveStarts = new int[days.length];
+        int[] inclusiveStarts = new int[days.length];
+        int firstIndex = n;
+        for (int i = 0; i < days.length; i++) {
+            exclusiveStarts[i] = series.indexOf(lastDate - days[i] + 1);
+            inclusiveStarts[i] = series.indexOf(lastDate - days[i]);
+            firstIndex = Math.min(firstIndex, inclusiveStarts[i]);
+        }
+
+        WindowKernels kernels = WindowKernels.get();
+
+        double[] sma = results.get(Analyses.SMA);
+        if (sma != null) {
+            for (int i = 0; i < days.length; i++) {
+                int count = n - exclusiveStarts[i];
+                if (count > 0) {
+                    sma[i] = sum(kernels, series, exclusiveStarts[i], n) / count;
+                }
+            }
+        }
+
+        double[] volatility = results.get(Analyses.Volatility);
+        if (volatility != null) {
+            // Each time period includes its start date
+            for (int i = 0; i < days.length; i++) {
+                volatility[i] = Math.sqrt(variance(kernels, series, inclusiveStarts[i], n));
+            }
+        }
+
+        double[] ema = results.get(Analyses.EMA);
+        if (ema != null) {
+            // Advance the EMAs of all time periods together, each one seeded with the first Close in its period
+            ExponentialMovingAverage[] averages = new ExponentialMovingAverage[days.length];
+            for (int i = 0; i < days.length; i++) {
+                averages[i] = new ExponentialMovingAverage(days[i]);
+            }
+            for (int index = firstIndex; index < n; index++) {
+                double close = series.close(index);
+                for (int i = 0; i < days.length; i++) {
+                    if (index >= exclusiveStarts[i]) {
+                        averages[i].update(close);
+                    }
+                }
+            }
+            for (int i = 0; i < days.length; i++) {
+                ema[i] = averages[i].value();
+            }
+        }
+
+        return results;
+    }
+
+
+    /**
+     * Sums the Close prices of a range of entries where they are stored, without copying them: with the window
+     * kernels over the array of an ArrayPriceSeries or the off-heap column of an OffHeapPriceSeries, and one
+     * entry at a time otherwise, such as over a mapped file.
+     * @param kernels the window kernels
+     * @param series the price series
+     * @param from the index of the first entry, inclusive
+     * @param to the index after the last entry, exclusive
+     * @return the sum, 0 if the range is empty
+     */
+    private static double sum(WindowKernels kernels, PriceSeries series, int from, int to) {
+        if (series instanceof ArrayPriceSeries) {
+            return kernels.sum(((ArrayPriceSeries) series).closes(), from, to);
+        }
+        if (series instanceof OffHeapPriceSeries) {
+            return kernels.sum(((OffHeapPriceSeries) series).closeColumn(), from, to);
+        }
+        double sum = 0;
+        for (int index = from; index < to; index++) {
+            sum += series.close(index);
+        }
+        return sum;
+    }
+
+
+    /**
+     * Calculates the population variance of the Close prices of a range of entries with the two-pass
+     * algorithm, where they are stored, like sum.
+     * @param kernels the window kernels
+     * @param series the price series
+     * @param from the index of the first entry, inclusive
+     * @param to the index after the last entry, exclusive
+     * @return the variance, 0 if the range is empty
+     */
+    private static double variance(WindowKernels kernels, PriceSeries series, int from, int to) {
+        if (series instanceof ArrayPriceSeries) {
+            return kernels.variance(((ArrayPriceSeries) series).closes(), from, to);
+        }
+        if (series instanceof OffHeapPriceSeries) {
+            return kernels.variance(((OffHeapPriceSeries) series).closeColumn(), from, to);
+        }
+        int count = to - from;
+        if (count <= 0) {
+            return 0;
+        }
+        double mean = sum(kernels, series, from, to) / count;
+        double squares = 0;
+        for (int index = from; index < to; index++) {
+            double deviation = series.close(index) - mean;
+            squares += deviation * deviation;
+        }
+        return squares / count;
+    }
+
+
+    /**
+     * Calculates the given analyses of a price series in the given time periods at every date, in a single
+     * pass over the series. Each time period slides along the series with the same bounds as compute, so that
+     * the value at every date equals what compute would return for the series ending at that date. SMA adds
+     * and removes prices with Welford's algorithm, and Volatility is taken from RollingVariance.volatilitySeries,
+     * which slides the same way. The EMA seeded at the start of a time period
+     * is derived from a single EMA over the whole series: with R the EMA seeded at the first entry, the EMA
+     * seeded at entry s and taken at entry t is R(t) + (1 - alpha)^(t - s) * (Close(s) - R(s)).
+     * @param series the price series to analyze
+     * @param analyses the analyses to be performed
+     * @param days the time periods to be analyzed in, in past days from each date
+     * @return the values of each analysis and time period at every entry of the series
+     */
+    public static IndicatorSeries series(PriceSeries series, Set<Analyses> analyses, int... days) {
+        int n = series.size();
+        boolean sma = analyses.contains(Analyses.SMA);
+        boolean ema = analyses.contains(Analyses.EMA);
+        boolean volatility = analyses.contains(Analyses.Volatility);
+        double[][] smaValues = sma ? new double[days.length][n] : null;
+        double[][] emaValues = ema ? new double[days.length][n] : null;
+
+        // Sliding state of each time period
+        int[] exclusiveStarts = new int[days.length];
+        RollingVariance[] means = new RollingVariance[days.length];
+        double[][] recursive = new double[days.length][];
+        double[][] decays = new double[days.length][];
+        for (int i = 0; i < days.length; i++) {
+            if (days[i] <= 0) {
+                throw new IllegalArgumentException("Time period must be positive: " + days[i]);
+            }
+            means[i] = new RollingVariance();
+            if (ema) {
+                // Dates are distinct, so an entry is never more than days - 1 entries after its period start
+                recursive[i] = ExponentialMovingAverage.series(series, 0, n, days[i]);
+                decays[i] = new double[days[i]];
+                double alpha = 2 / (double) (days[i] + 1);
+                decays[i][0] = 1;
+                for (int k = 1; k < days[i]; k++) {
+                    decays[i][k] = decays[i][k - 1] * (1 - alpha);
+                }
+            }
+        }
+
+        for (int index = 0; index < n; index++) {
+            int date = series.date(index);
+            double close = series.close(index);
+            for (int i = 0; i < days.length; i++) {
+                // SMA and EMA periods cover the dates after the start of the period
+                if (sma) {
+                    means[i].add(close);
+                }
+                while (series.date(exclusiveStarts[i]) <= date - days[i]) {
+                    if (sma) {
+                        means[i].remove(series.close(exclusiveStarts[i]));
+                    }
+                    exclusiveStarts[i]++;
+                }
+                if (sma) {
+                    smaValues[i][index] = means[i].mean();
+                }
+
+                if (ema) {
+                    int start = exclusiveStarts[i];
+                    emaValues[i][index] = recursive[i][index]
+                            + decays[i][index - start] * (series.close(start) - recursive[i][start]);
+                }
+            }
+        }
+
+        Map<Analyses, double[][]> values = new EnumMap<>(Analyses.class);
+        if (sma) {
+            values.put(Analyses.SMA, smaValues);
+        }
+        if (ema) {
+            values.put(Analyses.EMA, emaValues);
+        }
+        if (volatility) {
+            // Volatility periods include the start date
+            values.put(Analyses.Volatility, RollingVariance.volatilitySeries(series, days));
+        }
+        return new IndicatorSeries(series, days.clone(), values);
+    }
+
+}
@@ -0,0 +1,76 @@
+package analysis.indicators;
+
+import analysis.Analyses;
+
+import java.util.Map;
+
+/**
+ * A class that holds the value of several analyses in several time periods at every date of a price series,
+ * such as to chart or backtest them. Values are primitive arrays aligned with the entries of the series.
+ */
+public class IndicatorSeries {
+
+    private final PriceSeries prices;
+    private final int[] days;
+    private final Map<Analyses, double[][]> values;
+
+
+    /**
+     * A class that holds the value of several analyses in several time periods at every date of a price series.
+     * @param prices the price series the values were calculated from
+     * @param days the time periods
+     * @param values for each analysis, the values of each time period at every entry of the series
+     */
+    IndicatorSeries(PriceSeries prices, int[] days, Map<Analyses, double[][]> values) {
+        this.prices = prices;
+        this.days = days;
+        this.values = values;
+    }
+
+
+    /**
+     * Gets the number of dates.
+     * @return the number of dates
+     */
+    public int size() {
+        return prices.size();
+    }
+
+
+    /**
+     * Gets the date at the given index.
+     * @param index the index of the date
+     * @return the date in epoch days
+     */
+    public int date(int index) {
+        return prices.date(index);
+    }
+
+
+    /**
+     * Gets the time periods.
+     * @return the time periods, in past days from each date
+     */
+    public int[] days() {
+        return days.clone();
+    }
+
+
+    /**
+     * Gets the values of an analysis in a time period at every date.
+     * @param analysis the analysis
+     * @param days the time period
+     * @return the values, in date order and shared with this series
+     * @throws IllegalArgumentException if the analysis or time period was not calculated
+     */
+    public double[] values(Analyses analysis, int days) {
+        double[][] periods = values.get(analysis);
+        for (int i = 0; periods != null && i < this.days.length; i++) {
+            if (this.days[i] == days) {
+                return periods[i];
+            }
+        }
+        throw new IllegalArgumentException("Not calculated: " + analysis + ", " + days);
+    }
+
+}
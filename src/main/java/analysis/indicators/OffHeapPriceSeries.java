@@ -0,0 +1,170 @@
+package analysis.indicators;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A class that holds the full price history of a single stock off the heap, in one direct buffer per column:
+ * the date as epoch day, the Open, High, Low and Close prices and the Volume, ordered by date ascending. Only a
+ * few small buffer objects live on the heap, so that large histories neither add to the work of the garbage
+ * collector nor to its pauses. The memory is released once the series is no longer referenced.
+ * <p>
+ * A series is filled once with {@link #append} before it is shared, and is only read afterwards.
+ */
+public class OffHeapPriceSeries implements PriceSeries {
+
+    private IntBuffer dates;
+    private DoubleBuffer opens;
+    private DoubleBuffer highs;
+    private DoubleBuffer lows;
+    private DoubleBuffer closes;
+    private ByteBuffer closeBytes;
+    private DoubleBuffer volumes;
+    private int size;
+
+
+    /**
+     * A class that holds the full price history of a single stock off the heap, in one direct buffer per column.
+     * @param capacity the expected number of entries; the buffers grow when more are appended
+     */
+    public OffHeapPriceSeries(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+
+    /**
+     * Appends an entry after the most recent one, growing the buffers if needed.
+     * @param date the date in epoch days, after the most recent date
+     * @param open the Open price
+     * @param high the High price
+     * @param low the Low price
+     * @param close the Close price
+     * @param volume the Volume
+     */
+    public void append(int date, double open, double high, double low, double close, double volume) {
+        if (size > 0 && date <= dates.get(size - 1)) {
+            throw new IllegalArgumentException("Dates must be ascending: " + date);
+        }
+        if (size == dates.capacity()) {
+            allocate(size * 2);
+        }
+        dates.put(size, date);
+        opens.put(size, open);
+        highs.put(size, high);
+        lows.put(size, low);
+        closes.put(size, close);
+        volumes.put(size, volume);
+        size++;
+    }
+
+
+    /**
+     * Allocates new buffers of the given capacity and copies the current entries into them.
+     * @param capacity the number of entries of the new buffers
+     */
+    private void allocate(int capacity) {
+        IntBuffer newDates = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        ByteBuffer[] newBytes = new ByteBuffer[5];
+        DoubleBuffer[] newColumns = new DoubleBuffer[5];
+        DoubleBuffer[] columns = {opens, highs, lows, closes, volumes};
+        for (int i = 0; i < newColumns.length; i++) {
+            newBytes[i] = ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder());
+            newColumns[i] = newBytes[i].asDoubleBuffer();
+            if (size > 0) {
+                newColumns[i].put(0, columns[i], 0, size);
+            }
+        }
+        if (size > 0) {
+            newDates.put(0, dates, 0, size);
+        }
+
+        dates = newDates;
+        opens = newColumns[0];
+        highs = newColumns[1];
+        lows = newColumns[2];
+        closes = newColumns[3];
+        closeBytes = newBytes[3];
+        volumes = newColumns[4];
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public int date(int index) {
+        return dates.get(index);
+    }
+
+
+    /**
+     * Gets the Open price of the entry at the given index.
+     * @param index the index of the entry
+     * @return the Open price
+     */
+    public double open(int index) {
+        return opens.get(index);
+    }
+
+
+    /**
+     * Gets the High price of the entry at the given index.
+     * @param index the index of the entry
+     * @return the High price
+     */
+    public double high(int index) {
+        return highs.get(index);
+    }
+
+
+    /**
+     * Gets the Low price of the entry at the given index.
+     * @param index the index of the entry
+     * @return the Low price
+     */
+    public double low(int index) {
+        return lows.get(index);
+    }
+
+
+    @Override
+    public double close(int index) {
+        return closes.get(index);
+    }
+
+
+    /**
+     * Gets the Volume of the entry at the given index.
+     * @param index the index of the entry
+     * @return the Volume
+     */
+    public double volume(int index) {
+        return volumes.get(index);
+    }
+
+
+    /**
+     * Gets the Close column as bytes in native order, such as to reduce it with the window kernels without
+     * copying it. Must only be read with absolute reads.
+     * @return the Close column, shared with this series
+     */
+    ByteBuffer closeColumn() {
+        return closeBytes;
+    }
+
+
+    /**
+     * Gets the off-heap memory held by the buffers, which may be more than the entries use.
+     * @return the size of the buffers in bytes
+     */
+    public long memorySize() {
+        return (long) dates.capacity() * Integer.BYTES + 5L * closes.capacity() * Double.BYTES;
+    }
+
+}
@@ -0,0 +1,66 @@
+package analysis.indicators;
+
+/**
+ * An interface for the Close price history of a single stock, ordered by date ascending. Dates are epoch days,
+ * so that time periods can be resolved with integer comparisons. Implementations may be backed by arrays on the
+ * heap or by a view of stored data, so that indicators can be calculated without copying prices.
+ */
+public interface PriceSeries {
+
+    /**
+     * Gets the number of entries in the series.
+     * @return the number of entries
+     */
+    int size();
+
+
+    /**
+     * Gets the date of the entry at the given index.
+     * @param index the index of the entry
+     * @return the date in epoch days
+     */
+    int date(int index);
+
+
+    /**
+     * Gets the Close price of the entry at the given index.
+     * @param index the index of the entry
+     * @return the Close price
+     */
+    double close(int index);
+
+
+    /**
+     * Gets the date of the most recent entry.
+     * @return the most recent date in epoch days
+     * @throws IllegalStateException if the series is empty
+     */
+    default int lastDate() {
+        if (size() == 0) {
+            throw new IllegalStateException("Series is empty");
+        }
+        return date(size() - 1);
+    }
+
+
+    /**
+     * Gets the index of the first entry whose date is greater than or equal to the given date.
+     * @param date the date in epoch days
+     * @return the index of the first entry on or after the date, or the size of the series if there is none
+     */
+    default int indexOf(int date) {
+        // Binary search for the lower bound, since dates are ordered ascending
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (date(mid) < date) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,277 @@
+package analysis.indicators;
+
+import analysis.Analyses;
+
+/**
+ * A class that keeps the SMA, EMA and Volatility of a single stock up to date for several time periods while
+ * Close prices arrive one by one. Recent prices are kept in a ring buffer sized to the longest time period, and
+ * each time period keeps running sums of the prices within it, so that every new price updates all analyses in
+ * constant time per time period.
+ * <p>
+ * Volatility is kept with Welford's algorithm, adding and removing prices without subtracting sums of squares.
+ * <p>
+ * Time periods follow the same bounds as IndicatorEngine: SMA covers the dates after the start of the period,
+ * Volatility includes the start date itself. The EMA is seeded with the first price of its period, also as the
+ * period moves, like everywhere else. As in IndicatorEngine.series, it is derived from a single running EMA R
+ * kept for every price in the ring buffer: the EMA seeded at entry s and taken at entry t is
+ * R(t) + (1 - alpha)^(t - s) * (Close(s) - R(s)).
+ */
+public class RollingIndicators {
+
+    private final int[] days;
+    private final int capacity;
+
+    // Ring buffer of the most recent dates and Close prices
+    private final int[] dates;
+    private final double[] closes;
+    private int newest = -1;
+    private int size;
+
+    // Running state of each time period
+    private final int[] exclusiveCounts;
+    private final double[] exclusiveSums;
+    private final RollingVariance[] variances;
+    private final ExponentialMovingAverage[] emas;
+    private final double[][] recursive;
+    private final double[][] decays;
+
+
+    /**
+     * A class that keeps the SMA, EMA and Volatility of a single stock up to date for several time periods.
+     * @param days the time periods to be analyzed in, in past days from most recent entry
+     */
+    public RollingIndicators(int... days) {
+        if (days.length == 0) {
+            throw new IllegalArgumentException("No time period given");
+        }
+        this.days = days.clone();
+        emas = new ExponentialMovingAverage[days.length];
+        variances = new RollingVariance[days.length];
+        decays = new double[days.length][];
+        int longest = 0;
+        for (int i = 0; i < days.length; i++) {
+            emas[i] = new ExponentialMovingAverage(days[i]); // Also validates the time period
+            variances[i] = new RollingVariance();
+            longest = Math.max(longest, days[i]);
+
+            // Dates are distinct, so an entry is never more than days - 1 entries after its period start
+            double alpha = 2 / (double) (days[i] + 1);
+            decays[i] = new double[days[i]];
+            decays[i][0] = 1;
+            for (int k = 1; k < days[i]; k++) {
+                decays[i][k] = decays[i][k - 1] * (1 - alpha);
+            }
+        }
+
+        // Dates are distinct, so the longest inclusive period holds at most one entry more than its days
+        capacity = longest + 1;
+        dates = new int[capacity];
+        closes = new double[capacity];
+        recursive = new double[days.length][capacity];
+        exclusiveCounts = new int[days.length];
+        exclusiveSums = new double[days.length];
+    }
+
+
+    /**
+     * Loads the most recent prices of a stored price history, so that the analyses match those of the full
+     * history from the start. Must be called before any price is added.
+     * @param series the price history
+     * @throws IllegalStateException if prices have already been added
+     */
+    public synchronized void seed(PriceSeries series) {
+        if (size > 0) {
+            throw new IllegalStateException("Prices already added");
+        }
+        if (series.size() == 0) {
+            return;
+        }
+
+        // Only the entries the ring buffer holds are needed, the running EMA may start at any of them
+        int lastDate = series.lastDate();
+        for (int index = series.indexOf(lastDate - capacity + 1); index < series.size(); index++) {
+            push(series.date(index), series.close(index));
+        }
+    }
+
+
+    /**
+     * Adds a Close price. A price for the most recent date replaces the previous price of that date, such as
+     * when the Close price of the current day changes during trading.
+     * @param day the date in epoch days, not before the most recent date
+     * @param close the Close price
+     * @throws IllegalArgumentException if the date is before the most recent date
+     */
+    public synchronized void update(int day, double close) {
+        if (size > 0 && day < dates[newest]) {
+            throw new IllegalArgumentException("Price dated before most recent date: " + day);
+        }
+
+        if (size > 0 && day == dates[newest]) {
+            revise(close);
+        } else {
+            push(day, close);
+        }
+    }
+
+
+    /**
+     * Appends the price of a new date, removing the prices that leave each time period first.
+     * @param day the date in epoch days, after the most recent date
+     * @param close the Close price
+     */
+    private void push(int day, double close) {
+        for (int i = 0; i < days.length; i++) {
+            // SMA periods cover the dates after the start of the period
+            while (exclusiveCounts[i] > 0 && dates[at(exclusiveCounts[i] - 1)] <= day - days[i]) {
+                exclusiveSums[i] -= closes[at(exclusiveCounts[i] - 1)];
+                exclusiveCounts[i]--;
+            }
+
+            // Volatility periods include the start date
+            while (variances[i].count() > 0 && dates[at(variances[i].count() - 1)] < day - days[i]) {
+                variances[i].remove(closes[at(variances[i].count() - 1)]);
+            }
+        }
+
+        // Overwrite the oldest entry, which no time period covers anymore
+        newest = (newest + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+        dates[newest] = day;
+        closes[newest] = close;
+
+        for (int i = 0; i < days.length; i++) {
+            exclusiveSums[i] += close;
+            exclusiveCounts[i]++;
+            variances[i].add(close);
+            recursive[i][newest] = emas[i].update(close);
+        }
+    }
+
+
+    /**
+     * Replaces the price of the most recent date, which every time period covers.
+     * @param close the new Close price
+     */
+    private void revise(double close) {
+        double previous = closes[newest];
+        closes[newest] = close;
+        for (int i = 0; i < days.length; i++) {
+            exclusiveSums[i] += close - previous;
+            variances[i].remove(previous);
+            variances[i].add(close);
+            recursive[i][newest] = emas[i].revise(close);
+        }
+    }
+
+
+    /**
+     * Gets the ring buffer position of an entry by its age.
+     * @param age the number of entries added after it, 0 for the most recent entry
+     * @return the position in the ring buffer
+     */
+    private int at(int age) {
+        return (newest - age + capacity) % capacity;
+    }
+
+
+    /**
+     * Gets the current value of an analysis in one of the time periods.
+     * @param analysis the analysis
+     * @param days the time period, which must be one of the time periods given on creation
+     * @return the current value, 0 if no price has been added yet
+     * @throws IllegalArgumentException if the time period was not given on creation
+     */
+    public synchronized double value(Analyses analysis, int days) {
+        return valueAt(analysis, period(days));
+    }
+
+
+    /**
+     * Gets the current values of an analysis in all time periods.
+     * @param analysis the analysis
+     * @return the current values, in the same order as the time periods given on creation
+     */
+    public synchronized double[] values(Analyses analysis) {
+        double[] values = new double[days.length];
+        for (int i = 0; i < days.length; i++) {
+            values[i] = valueAt(analysis, i);
+        }
+        return values;
+    }
+
+
+    /**
+     * Gets the current value of an analysis in the time period at the given position.
+     * @param analysis the analysis
+     * @param period the position of the time period
+     * @return the current value, 0 if no price has been added yet
+     */
+    private double valueAt(Analyses analysis, int period) {
+        switch (analysis) {
+            case SMA:
+                return exclusiveCounts[period] == 0 ? 0 : exclusiveSums[period] / exclusiveCounts[period];
+            case EMA:
+                return ema(period);
+            case Volatility:
+                return variances[period].standardDeviation();
+            default:
+                throw new IllegalArgumentException("Unknown analysis: " + analysis);
+        }
+    }
+
+
+    /**
+     * Gets the EMA seeded at the first entry of the time period at the given position, from the running EMA at
+     * the most recent entry and at that first entry.
+     * @param period the position of the time period
+     * @return the EMA, 0 if no price has been added yet
+     */
+    private double ema(int period) {
+        if (exclusiveCounts[period] == 0) {
+            return 0;
+        }
+        int age = exclusiveCounts[period] - 1;
+        int start = at(age);
+        return recursive[period][newest] + decays[period][age] * (closes[start] - recursive[period][start]);
+    }
+
+
+    /**
+     * Gets the position of a time period.
+     * @param days the time period
+     * @return the position of the time period given on creation
+     * @throws IllegalArgumentException if the time period was not given on creation
+     */
+    private int period(int days) {
+        for (int i = 0; i < this.days.length; i++) {
+            if (this.days[i] == days) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Time period not tracked: " + days);
+    }
+
+
+    /**
+     * Gets the time periods that are kept up to date.
+     * @return the time periods, in past days from most recent entry
+     */
+    public int[] days() {
+        return days.clone();
+    }
+
+
+    /**
+     * Gets the date of the most recent price.
+     * @return the most recent date in epoch days
+     * @throws IllegalStateException if no price has been added yet
+     */
+    public synchronized int lastDate() {
+        if (size == 0) {
+            throw new IllegalStateException("No price added");
+        }
+        return dates[newest];
+    }
+
+}
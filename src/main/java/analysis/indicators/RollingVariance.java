@@ -0,0 +1,129 @@
+package analysis.indicators;
+
+/**
+ * A class that calculates the variance of a changing window of Close prices in a single pass, using Welford's
+ * algorithm. Prices can be added and removed in any order, and the running mean and sum of squared deviations
+ * are updated without ever subtracting large sums of squares from each other, which keeps the result accurate
+ * for long histories and prices far from zero.
+ */
+public class RollingVariance {
+
+    private int count;
+    private double mean;
+    private double squaredDeviations;
+
+
+    /**
+     * Adds a Close price to the window.
+     * @param close the Close price
+     */
+    public void add(double close) {
+        count++;
+        double delta = close - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (close - mean);
+    }
+
+
+    /**
+     * Removes a Close price that was added before from the window.
+     * @param close the Close price
+     */
+    public void remove(double close) {
+        if (count <= 1) {
+            reset();
+            return;
+        }
+        count--;
+        double delta = close - mean;
+        mean -= delta / count;
+
+        // A single price has no deviation, whatever rounding is left over from removed prices
+        squaredDeviations = count == 1 ? 0 : Math.max(0, squaredDeviations - delta * (close - mean));
+    }
+
+
+    /**
+     * Gets the number of prices in the window.
+     * @return the number of prices
+     */
+    public int count() {
+        return count;
+    }
+
+
+    /**
+     * Gets the mean of the prices in the window.
+     * @return the mean, 0 if the window is empty
+     */
+    public double mean() {
+        return mean;
+    }
+
+
+    /**
+     * Gets the population variance of the prices in the window, like the original SQL query.
+     * @return the variance, 0 if the window is empty
+     */
+    public double variance() {
+        return count == 0 ? 0 : squaredDeviations / count;
+    }
+
+
+    /**
+     * Gets the population standard deviation of the prices in the window, which is the Price Volatility.
+     * @return the standard deviation, 0 if the window is empty
+     */
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+
+    /**
+     * Removes all prices from the window.
+     */
+    public void reset() {
+        count = 0;
+        mean = 0;
+        squaredDeviations = 0;
+    }
+
+
+    /**
+     * Calculates the Price Volatility of a price series at every date, for all given time periods in a single
+     * pass. Each time period slides along the series, adding the new Close and removing the Close prices that
+     * fall out of it, so that the whole series costs constant time per date and time period.
+     * @param series the price series
+     * @param days the time periods, in past days from each date
+     * @return for each time period in the given order, the Price Volatility at every entry of the series
+     */
+    public static double[][] volatilitySeries(PriceSeries series, int... days) {
+        int n = series.size();
+        double[][] volatility = new double[days.length][n];
+        RollingVariance[] windows = new RollingVariance[days.length];
+        int[] starts = new int[days.length];
+        for (int i = 0; i < days.length; i++) {
+            if (days[i] <= 0) {
+                throw new IllegalArgumentException("Time period must be positive: " + days[i]);
+            }
+            windows[i] = new RollingVariance();
+        }
+
+        for (int index = 0; index < n; index++) {
+            int date = series.date(index);
+            double close = series.close(index);
+            for (int i = 0; i < days.length; i++) {
+                windows[i].add(close);
+
+                // Remove prices before the start of the time period, which includes its start date
+                while (series.date(starts[i]) < date - days[i]) {
+                    windows[i].remove(series.close(starts[i]));
+                    starts[i]++;
+                }
+                volatility[i][index] = windows[i].standardDeviation();
+            }
+        }
+        return volatility;
+    }
+
+}
@@ -0,0 +1,87 @@
+package analysis.indicators;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A class that calculates the window reductions one price at a time, for JVMs without the Vector API.
+ */
+class ScalarKernels extends WindowKernels {
+
+    @Override
+    public boolean isVectorized() {
+        return false;
+    }
+
+
+    @Override
+    public double sum(double[] prices, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += prices[i];
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double sumOfSquares(double[] prices, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += prices[i] * prices[i];
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double sumOfSquaredDeviations(double[] prices, int from, int to, double mean) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double deviation = prices[i] - mean;
+            sum += deviation * deviation;
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double min(double[] prices, int from, int to) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, prices[i]);
+        }
+        return min;
+    }
+
+
+    @Override
+    public double max(double[] prices, int from, int to) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, prices[i]);
+        }
+        return max;
+    }
+
+
+    @Override
+    public double sum(ByteBuffer prices, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += prices.getDouble(i * Double.BYTES);
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double sumOfSquaredDeviations(ByteBuffer prices, int from, int to, double mean) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double deviation = prices.getDouble(i * Double.BYTES) - mean;
+            sum += deviation * deviation;
+        }
+        return sum;
+    }
+
+}
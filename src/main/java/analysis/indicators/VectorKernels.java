@@ -0,0 +1,137 @@
+package analysis.indicators;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A class that calculates the window reductions with the Java Vector API, using the widest vectors of the CPU,
+ * such as 4 prices per instruction with AVX2. Lanes are accumulated separately and only reduced at the end of
+ * the window, and the prices after the last full vector are reduced one at a time.
+ */
+class VectorKernels extends WindowKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+
+    @Override
+    public double sum(double[] prices, int from, int to) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            sums = sums.add(DoubleVector.fromArray(SPECIES, prices, i));
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += prices[i];
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double sumOfSquares(double[] prices, int from, int to) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, prices, i);
+            sums = vector.fma(vector, sums);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += prices[i] * prices[i];
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double sumOfSquaredDeviations(double[] prices, int from, int to, double mean) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector deviation = DoubleVector.fromArray(SPECIES, prices, i).sub(mean);
+            sums = deviation.fma(deviation, sums);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            double deviation = prices[i] - mean;
+            sum += deviation * deviation;
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double min(double[] prices, int from, int to) {
+        DoubleVector mins = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            mins = mins.min(DoubleVector.fromArray(SPECIES, prices, i));
+        }
+        double min = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++) {
+            min = Math.min(min, prices[i]);
+        }
+        return min;
+    }
+
+
+    @Override
+    public double max(double[] prices, int from, int to) {
+        DoubleVector maxs = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            maxs = maxs.max(DoubleVector.fromArray(SPECIES, prices, i));
+        }
+        double max = maxs.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++) {
+            max = Math.max(max, prices[i]);
+        }
+        return max;
+    }
+
+
+    @Override
+    public double sum(ByteBuffer prices, int from, int to) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            sums = sums.add(
+                    DoubleVector.fromByteBuffer(SPECIES, prices, i * Double.BYTES, ByteOrder.nativeOrder()));
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += prices.getDouble(i * Double.BYTES);
+        }
+        return sum;
+    }
+
+
+    @Override
+    public double sumOfSquaredDeviations(ByteBuffer prices, int from, int to, double mean) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector deviation = DoubleVector.fromByteBuffer(SPECIES, prices, i * Double.BYTES,
+                    ByteOrder.nativeOrder()).sub(mean);
+            sums = deviation.fma(deviation, sums);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            double deviation = prices.getDouble(i * Double.BYTES) - mean;
+            sum += deviation * deviation;
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,168 @@
+package analysis.indicators;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A class for the reductions over windows of Close prices behind SMA and Volatility: sum, sum of squares, sum
+ * of squared deviations from a mean, minimum and maximum. The vectorized kernels use the Java Vector API to
+ * process several prices per instruction, and are used when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}; otherwise the scalar kernels are used, which give the same results
+ * up to rounding. Prices are either arrays on the heap or columns of doubles in native byte order, such as the
+ * off-heap columns of OffHeapPriceSeries, with indexes counted in prices.
+ */
+public abstract class WindowKernels {
+
+    private static final WindowKernels SCALAR = new ScalarKernels();
+    private static final WindowKernels BEST = loadBest();
+
+
+    /**
+     * Gets the fastest kernels available in this JVM.
+     * @return the vectorized kernels if the Vector API is available, the scalar kernels otherwise
+     */
+    public static WindowKernels get() {
+        return BEST;
+    }
+
+
+    /**
+     * Gets the scalar kernels, such as to compare them with the vectorized kernels.
+     * @return the scalar kernels
+     */
+    public static WindowKernels scalar() {
+        return SCALAR;
+    }
+
+
+    /**
+     * Loads the vectorized kernels, falling back to the scalar kernels if the Vector API is not available.
+     * @return the fastest kernels available
+     */
+    private static WindowKernels loadBest() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return new VectorKernels();
+        }
+        catch (LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+
+    /**
+     * Checks whether these kernels use the Vector API.
+     * @return true if the kernels are vectorized, false otherwise
+     */
+    public abstract boolean isVectorized();
+
+
+    /**
+     * Calculates the sum of the prices in a window.
+     * @param prices the prices
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the sum, 0 if the window is empty
+     */
+    public abstract double sum(double[] prices, int from, int to);
+
+
+    /**
+     * Calculates the sum of the squares of the prices in a window.
+     * @param prices the prices
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the sum of squares, 0 if the window is empty
+     */
+    public abstract double sumOfSquares(double[] prices, int from, int to);
+
+
+    /**
+     * Calculates the sum of the squared deviations of the prices in a window from a given mean. With the mean
+     * of the window, this is the second pass of the two-pass variance, which stays accurate where subtracting
+     * sums of squares would cancel out.
+     * @param prices the prices
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @param mean the mean to take the deviations from
+     * @return the sum of squared deviations, 0 if the window is empty
+     */
+    public abstract double sumOfSquaredDeviations(double[] prices, int from, int to, double mean);
+
+
+    /**
+     * Calculates the minimum of the prices in a window.
+     * @param prices the prices
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the minimum, positive infinity if the window is empty
+     */
+    public abstract double min(double[] prices, int from, int to);
+
+
+    /**
+     * Calculates the maximum of the prices in a window.
+     * @param prices the prices
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the maximum, negative infinity if the window is empty
+     */
+    public abstract double max(double[] prices, int from, int to);
+
+
+    /**
+     * Calculates the sum of the prices in a window of a column.
+     * @param prices the prices, as doubles in native byte order
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the sum, 0 if the window is empty
+     */
+    public abstract double sum(ByteBuffer prices, int from, int to);
+
+
+    /**
+     * Calculates the sum of the squared deviations of the prices in a window of a column from a given mean.
+     * @param prices the prices, as doubles in native byte order
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @param mean the mean to take the deviations from
+     * @return the sum of squared deviations, 0 if the window is empty
+     */
+    public abstract double sumOfSquaredDeviations(ByteBuffer prices, int from, int to, double mean);
+
+
+    /**
+     * Calculates the population variance of the prices in a window with the two-pass algorithm.
+     * @param prices the prices
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the variance, 0 if the window is empty
+     */
+    public double variance(double[] prices, int from, int to) {
+        int count = to - from;
+        if (count <= 0) {
+            return 0;
+        }
+        double mean = sum(prices, from, to) / count;
+        return sumOfSquaredDeviations(prices, from, to, mean) / count;
+    }
+
+
+    /**
+     * Calculates the population variance of the prices in a window of a column with the two-pass algorithm.
+     * @param prices the prices, as doubles in native byte order
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     * @return the variance, 0 if the window is empty
+     */
+    public double variance(ByteBuffer prices, int from, int to) {
+        int count = to - from;
+        if (count <= 0) {
+            return 0;
+        }
+        double mean = sum(prices, from, to) / count;
+        return sumOfSquaredDeviations(prices, from, to, mean) / count;
+    }
+
+}
@@ -0,0 +1,162 @@
+package analysis.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A class that tests that AsyncStorageHandler runs streamed updates on its single writer in submission order,
+ * also through the caching and off-heap storages, and reports failures through the returned futures.
+ */
+class AsyncStorageHandlerTest {
+
+    /**
+     * Most recent rows missing from the earlier version of a file
+     */
+    private static final int NEW_ROWS = 20;
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void streamsOnOneWriterInSubmissionOrder() throws Exception {
+        List<File> files = copySampleFiles();
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        IngestProgress progress = (stock, rows, bytesRead, totalBytes) ->
+                events.add(Thread.currentThread().getName() + " " + stock);
+
+        try (AsyncStorageHandler async = new AsyncStorageHandler(new DatabaseHandler(url("stocks")), 2)) {
+            List<CompletableFuture<UpdateResult>> updates = new ArrayList<>();
+            for (File file : files) {
+                updates.add(async.streamUpdate(file, 7, 20, progress));
+            }
+            for (CompletableFuture<UpdateResult> update : updates) {
+                assertEquals(UpdateResult.WRITTEN, update.get());
+            }
+        }
+
+        // Every batch was written by the same thread, and each file only after the ones submitted before it
+        String writer = events.get(0).substring(0, events.get(0).indexOf(' '));
+        List<String> order = new ArrayList<>();
+        for (String event : events) {
+            assertEquals(writer, event.substring(0, event.indexOf(' ')));
+            String stock = event.substring(event.indexOf(' ') + 1);
+            if (order.isEmpty() || !order.get(order.size() - 1).equals(stock)) {
+                order.add(stock);
+            }
+        }
+        List<String> submitted = new ArrayList<>();
+        for (File file : files) {
+            submitted.add(StorageHandler.stockOf(file));
+        }
+        assertEquals(submitted, order);
+    }
+
+
+    @Test
+    void streamsThroughCachingAndOffHeapStorages() throws Exception {
+        File sample = OhlcvParserTest.sampleFiles().get(0);
+        String stock = StorageHandler.stockOf(sample);
+        List<String> lines = Files.readAllLines(sample.toPath());
+
+        StorageHandler storage = new CachingStorageHandler(
+                new OffHeapStorageHandler(new DatabaseHandler(url("stocks"))), 64);
+        try (AsyncStorageHandler async = new AsyncStorageHandler(storage, 2)) {
+            // Cache results and the off-heap history of an earlier version of the file
+            List<String> earlier = new ArrayList<>(lines);
+            earlier.subList(1, 1 + NEW_ROWS).clear();
+            assertEquals(UpdateResult.WRITTEN, async.updateDB(write(sample.getName(), earlier)).get());
+            async.getSMA(stock, 30).get();
+            async.getVolatility(stock, 30).get();
+
+            // Streaming the grown file replaces what the wrapping storages hold of the stock
+            File grown = write(sample.getName(), lines);
+            assertEquals(UpdateResult.WRITTEN, async.streamUpdate(grown, 7, 20, null).get());
+
+            try (OffHeapStorageHandler full = new OffHeapStorageHandler(new DatabaseHandler(url("full")))) {
+                assertEquals(UpdateResult.WRITTEN, full.updateDB(grown));
+                assertEquals(full.getLastDate(stock), (int) async.getLastDate(stock).get());
+                assertEquals(full.getSMA(stock, 30), async.getSMA(stock, 30).get());
+                assertEquals(full.getVolatility(stock, 30), async.getVolatility(stock, 30).get());
+            }
+        }
+    }
+
+
+    @Test
+    void failuresCompleteExceptionally() throws Exception {
+        File file = copySampleFiles().get(0);
+
+        // A storage without a database cannot stream
+        Path mapped = Files.createDirectory(directory.resolve("mapped"));
+        try (AsyncStorageHandler async = new AsyncStorageHandler(new MappedFileHandler(mapped.toString()), 1)) {
+            CompletableFuture<UpdateResult> update = async.streamUpdate(file, 7, 20, null);
+            ExecutionException failure = assertThrows(ExecutionException.class, update::get);
+            assertInstanceOf(UnsupportedOperationException.class, failure.getCause());
+        }
+
+        try (AsyncStorageHandler async = new AsyncStorageHandler(new DatabaseHandler(url("stocks")), 1)) {
+            // Invalid tickers fail on the writer instead of throwing at the caller
+            File reserved = write("prices.csv", Files.readAllLines(file.toPath()));
+            CompletableFuture<UpdateResult> update = async.streamUpdate(reserved, 7, 20, null);
+            ExecutionException failure = assertThrows(ExecutionException.class, update::get);
+            assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+
+            // Updates report files that cannot be read as failed
+            assertEquals(UpdateResult.FAILED, async.updateDB(directory.resolve("missing.csv").toFile()).get());
+        }
+    }
+
+
+    /**
+     * Copies the sample files into the temporary directory.
+     * @return the copied .csv files
+     * @throws IOException if a file cannot be copied
+     */
+    private List<File> copySampleFiles() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (File sample : OhlcvParserTest.sampleFiles()) {
+            files.add(write(sample.getName(), Files.readAllLines(sample.toPath())));
+        }
+        return files;
+    }
+
+
+    /**
+     * Writes a .csv file into the temporary directory.
+     * @param name the name of the file, which names its stock
+     * @param lines the lines of the file
+     * @return the written file
+     * @throws IOException if the file cannot be written
+     */
+    private File write(String name, List<String> lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, lines);
+        return file.toFile();
+    }
+
+
+    /**
+     * Gets the url of a database in the temporary directory.
+     * @param name the name of the database file
+     * @return the url of the database
+     */
+    private String url(String name) {
+        return "jdbc:sqlite:" + directory.resolve(name + ".db");
+    }
+
+}
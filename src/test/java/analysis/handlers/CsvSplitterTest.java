@@ -0,0 +1,206 @@
+package analysis.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A class that tests that splitting a .csv file into ranges, whether parsed at once or streamed in chunks,
+ * yields the same rows as parsing it in a single pass.
+ */
+class CsvSplitterTest {
+
+    /**
+     * Ranges files are split into, while one sample file is also parsed in every number of ranges up to the last
+     * one
+     */
+    private static final int[] RANGES = {1, 2, 3, 5, 8, 16, 100, 1000};
+
+    private static final int[] ROWS_PER_CHUNK = {1, 7, Integer.MAX_VALUE};
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void parsedRangesMatchSinglePass() throws IOException {
+        // Every number of ranges, most of them cutting each row in a different place
+        File sample = OhlcvParserTest.sampleFiles().get(0);
+        List<String> expected = rows(PriceRows.parse(sample.getPath(), Integer.MIN_VALUE));
+        for (int ranges = 1; ranges <= RANGES[RANGES.length - 1]; ranges++) {
+            assertEquals(expected, rows(CsvSplitter.parse(sample, Integer.MIN_VALUE, ranges)),
+                    sample.getName() + " in " + ranges + " ranges");
+        }
+
+        // Skipping rows before a date
+        for (File file : files()) {
+            for (int ranges : RANGES) {
+                assertParsedRanges(file, ranges);
+            }
+        }
+    }
+
+
+    @Test
+    void streamedChunksMatchSinglePass() throws IOException, SQLException {
+        for (File file : files()) {
+            // Every range streams on its own thread, so the most ranges are only streamed once
+            for (int ranges : RANGES) {
+                for (int rowsPerChunk : ranges < RANGES[RANGES.length - 1] ? ROWS_PER_CHUNK : new int[]{7}) {
+                    assertStreamedRanges(file, ranges, rowsPerChunk);
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void streamingStopsAtReceiverFailure() throws IOException {
+        File file = generate(5_000);
+        SQLException failure = assertThrows(SQLException.class, () ->
+                CsvSplitter.stream(file, Integer.MIN_VALUE, 4, 10, (rows, bytes) -> {
+                    throw new SQLException("full");
+                }));
+        assertEquals("full", failure.getMessage());
+    }
+
+
+    @Test
+    void malformedRangeFailsStreaming() throws IOException {
+        Path file = directory.resolve("bad.csv");
+        Files.writeString(file, "Date,Open,High,Low,Close,Volume\n09/16/2024,1,2,3,4,5\n09/13/2024,1,x,3,4,5\n");
+        for (int ranges : RANGES) {
+            assertThrows(IOException.class, () ->
+                    CsvSplitter.stream(file.toFile(), Integer.MIN_VALUE, ranges, 1, (rows, bytes) -> { }));
+            assertThrows(IOException.class, () -> CsvSplitter.parse(file.toFile(), Integer.MIN_VALUE, ranges));
+        }
+    }
+
+
+    /**
+     * Asserts that a file parsed in ranges yields the same rows in the same order as a single pass, whether all
+     * rows are kept or only the most recent ones.
+     * @param file the .csv file
+     * @param ranges the number of ranges
+     * @throws IOException if the file cannot be read or parsed
+     */
+    private static void assertParsedRanges(File file, int ranges) throws IOException {
+        for (int fromDay : new int[]{Integer.MIN_VALUE, (int) LocalDate.of(2024, 6, 1).toEpochDay()}) {
+            assertEquals(rows(PriceRows.parse(file.getPath(), fromDay)),
+                    rows(CsvSplitter.parse(file, fromDay, ranges)),
+                    file.getName() + " in " + ranges + " ranges from " + fromDay);
+        }
+    }
+
+
+    /**
+     * Asserts that a file streamed in ranges yields the same rows as a single pass, in chunks of at most the
+     * given size, and accounts for all bytes after the header.
+     * @param file the .csv file
+     * @param ranges the number of ranges
+     * @param rowsPerChunk the most rows of a chunk
+     * @throws IOException if the file cannot be read or parsed
+     * @throws SQLException never, as the receiver does not write
+     */
+    private static void assertStreamedRanges(File file, int ranges, int rowsPerChunk)
+            throws IOException, SQLException {
+        List<String> expected = rows(PriceRows.parse(file.getPath(), Integer.MIN_VALUE));
+        expected.sort(null);
+
+        // Chunks of different ranges arrive in any order
+        List<String> streamed = new ArrayList<>();
+        long[] bytes = {0};
+        CsvSplitter.stream(file, Integer.MIN_VALUE, ranges, rowsPerChunk, (rows, chunkBytes) -> {
+            assertTrue(rows.size() <= rowsPerChunk);
+            streamed.addAll(rows(rows));
+            bytes[0] += chunkBytes;
+        });
+        streamed.sort(null);
+
+        String name = file.getName() + " in " + ranges + " ranges of chunks of " + rowsPerChunk;
+        assertEquals(expected, streamed, name);
+        assertEquals(file.length() - headerBytes(file), bytes[0], name);
+    }
+
+
+    /**
+     * Gets the files to split: the sample files, and a generated file with Windows line breaks and many rows.
+     * @return the .csv files
+     * @throws IOException if the generated file cannot be written
+     */
+    private List<File> files() throws IOException {
+        List<File> files = OhlcvParserTest.sampleFiles();
+        files.add(generate(20_000));
+        return files;
+    }
+
+
+    /**
+     * Writes a .csv file of random daily quotes, most recent date first, with Windows line breaks.
+     * @param size the number of rows
+     * @return the .csv file
+     * @throws IOException if the file cannot be written
+     */
+    private File generate(int size) throws IOException {
+        Random random = new Random(size);
+        LocalDate date = LocalDate.of(2024, 9, 16);
+        StringBuilder csv = new StringBuilder("Date,Open,High,Low,Close,Volume\r\n");
+        for (int i = 0; i < size; i++) {
+            double close = 100 + random.nextInt(100_000) / 100.0;
+            csv.append(String.format(Locale.ROOT,
+                    "%02d/%02d/%04d,\"%.2f\",\"%.2f\",\"%.2f\",\"%.2f\",\"%,d\"\r\n",
+                    date.getMonthValue(), date.getDayOfMonth(), date.getYear(),
+                    close - 1, close + 2, close - 2, close, random.nextInt(100_000_000)));
+            date = date.minusDays(1);
+        }
+        Path file = directory.resolve("generated" + size + ".csv");
+        Files.writeString(file, csv);
+        return file.toFile();
+    }
+
+
+    /**
+     * Gets the size of the header line of a file.
+     * @param file the .csv file
+     * @return the number of bytes up to and including the first line break
+     * @throws IOException if the file cannot be read
+     */
+    private static long headerBytes(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int end = 0;
+        while (bytes[end] != '\n') {
+            end++;
+        }
+        return end + 1;
+    }
+
+
+    /**
+     * Gets parsed rows as text, such as to compare them.
+     * @param rows the parsed rows
+     * @return the date and numbers of each row, in order
+     */
+    private static List<String> rows(PriceRows rows) {
+        List<String> text = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            text.add(rows.day(i) + "," + rows.open(i) + "," + rows.high(i) + "," + rows.low(i) + ","
+                    + rows.close(i) + "," + rows.volume(i));
+        }
+        return text;
+    }
+
+}
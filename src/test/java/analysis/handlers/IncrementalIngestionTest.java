@@ -0,0 +1,211 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.PriceSeries;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A class that tests that appending the new rows of grown .csv files yields the same data and analyses as
+ * loading the grown files into an empty database, in every storage mode.
+ */
+class IncrementalIngestionTest {
+
+    /**
+     * Most recent rows missing from the earlier versions of the files
+     */
+    private static final int NEW_ROWS = 20;
+
+    private static final int[] DAYS = {1, 5, 30, 90, 360};
+
+    @TempDir
+    Path directory;
+
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void appendMatchesFullReload(StorageMode mode) throws IOException {
+        List<File> files = writeEarlierVersions();
+        try (DatabaseHandler incremental = open("incremental", mode)) {
+            for (File file : files) {
+                assertEquals(UpdateResult.WRITTEN, incremental.updateDB(file), file.getName());
+            }
+
+            // Grow the files, then append their new rows
+            List<File> grown = writeSampleFiles();
+            for (File file : grown) {
+                assertEquals(UpdateResult.WRITTEN, incremental.updateDB(file), file.getName());
+                assertEquals(UpdateResult.UNCHANGED, incremental.updateDB(file),
+                        file.getName() + " is unchanged");
+            }
+
+            try (DatabaseHandler full = open("full", mode)) {
+                for (File file : grown) {
+                    assertEquals(UpdateResult.WRITTEN, full.updateDB(file), file.getName());
+                }
+                assertSameAnalyses(full, incremental);
+            }
+        }
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void bulkAppendMatchesFullReload(StorageMode mode) throws IOException {
+        List<File> files = writeEarlierVersions();
+        try (DatabaseHandler incremental = open("incremental", mode)) {
+            assertEquals(Set.of(UpdateResult.WRITTEN), Set.copyOf(incremental.bulkLoad(files, 2).values()));
+
+            // Grow the files, then bulk load their new rows
+            List<File> grown = writeSampleFiles();
+            assertEquals(Set.of(UpdateResult.WRITTEN), Set.copyOf(incremental.bulkLoad(grown, 2).values()));
+
+            try (DatabaseHandler full = open("full", mode)) {
+                for (File file : grown) {
+                    assertEquals(UpdateResult.WRITTEN, full.updateDB(file), file.getName());
+                }
+                assertSameAnalyses(full, incremental);
+            }
+        }
+    }
+
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void streamedAppendMatchesFullReload(StorageMode mode) throws IOException {
+        List<File> files = writeEarlierVersions();
+        try (DatabaseHandler incremental = open("incremental", mode)) {
+            for (File file : files) {
+                assertEquals(UpdateResult.WRITTEN, incremental.streamUpdate(file, 7, 20, null),
+                        file.getName());
+            }
+
+            // Grow the files, then stream their new rows
+            List<File> grown = writeSampleFiles();
+            for (File file : grown) {
+                assertEquals(UpdateResult.WRITTEN, incremental.streamUpdate(file, 7, 20, null),
+                        file.getName());
+                assertEquals(UpdateResult.UNCHANGED, incremental.streamUpdate(file, 7, 20, null),
+                        file.getName() + " is unchanged");
+            }
+
+            try (DatabaseHandler full = open("full", mode)) {
+                for (File file : grown) {
+                    assertEquals(UpdateResult.WRITTEN, full.updateDB(file), file.getName());
+                }
+                assertSameAnalyses(full, incremental);
+            }
+        }
+    }
+
+
+    /**
+     * Asserts that two databases hold the same stocks, rows and analyses.
+     * @param expected the database loaded at once
+     * @param actual the database appended to
+     */
+    private static void assertSameAnalyses(DatabaseHandler expected, DatabaseHandler actual) {
+        assertEquals(expected.getAvailableStocks(), actual.getAvailableStocks());
+        for (String stock : expected.getAvailableStocks()) {
+            assertEquals(expected.getLastDate(stock), actual.getLastDate(stock), stock);
+
+            PriceSeries expectedSeries = expected.getPriceSeries(stock);
+            PriceSeries actualSeries = actual.getPriceSeries(stock);
+            assertEquals(expectedSeries.size(), actualSeries.size(), stock);
+            for (int i = 0; i < expectedSeries.size(); i++) {
+                assertEquals(expectedSeries.date(i), actualSeries.date(i), stock);
+                assertEquals(expectedSeries.close(i), actualSeries.close(i), stock);
+            }
+
+            for (int days : DAYS) {
+                String name = stock + " over " + days + " days";
+                assertEquals(expected.getSMA(stock, days), actual.getSMA(stock, days), name);
+                assertEquals(expected.getEMA(stock, days), actual.getEMA(stock, days), name);
+                assertEquals(expected.getVolatility(stock, days), actual.getVolatility(stock, days), name);
+            }
+
+            Map<Analyses, double[]> expectedResults = expected.analyze(EnumSet.allOf(Analyses.class), stock, DAYS);
+            Map<Analyses, double[]> actualResults = actual.analyze(EnumSet.allOf(Analyses.class), stock, DAYS);
+            for (Analyses analysis : Analyses.values()) {
+                assertArrayEquals(expectedResults.get(analysis), actualResults.get(analysis),
+                        stock + " " + analysis);
+            }
+        }
+    }
+
+
+    /**
+     * Writes earlier versions of the sample files, without their most recent rows, and with the most recent
+     * remaining row revised like a quote taken during its trading day.
+     * @return the written .csv files
+     * @throws IOException if a file cannot be written
+     */
+    private List<File> writeEarlierVersions() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (File sample : OhlcvParserTest.sampleFiles()) {
+            List<String> lines = new ArrayList<>(Files.readAllLines(sample.toPath()));
+            lines.subList(1, 1 + NEW_ROWS).clear();
+
+            // The Close is corrected once the file grows
+            String date = lines.get(1).substring(0, lines.get(1).indexOf(','));
+            lines.set(1, date + ",\"1.00\",\"2.00\",\"0.50\",\"1.50\",\"1,000\"");
+
+            files.add(write(sample.getName(), lines));
+        }
+        return files;
+    }
+
+
+    /**
+     * Writes copies of the sample files, replacing their earlier versions.
+     * @return the written .csv files
+     * @throws IOException if a file cannot be written
+     */
+    private List<File> writeSampleFiles() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (File sample : OhlcvParserTest.sampleFiles()) {
+            files.add(write(sample.getName(), Files.readAllLines(sample.toPath())));
+        }
+        return files;
+    }
+
+
+    /**
+     * Writes a .csv file into the temporary directory.
+     * @param name the name of the file, which names its stock
+     * @param lines the lines of the file
+     * @return the written file
+     * @throws IOException if the file cannot be written
+     */
+    private File write(String name, List<String> lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, lines);
+        return file.toFile();
+    }
+
+
+    /**
+     * Opens a database in the temporary directory.
+     * @param name the name of the database file
+     * @param mode the storage mode
+     * @return the database
+     */
+    private DatabaseHandler open(String name, StorageMode mode) {
+        return new DatabaseHandler("jdbc:sqlite:" + directory.resolve(name + ".db"), mode);
+    }
+
+}
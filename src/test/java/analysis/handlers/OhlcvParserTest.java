@@ -0,0 +1,161 @@
+package analysis.handlers;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A class that tests the OhlcvParser against the CSVParser and SimpleDateFormat of the former ingestion.
+ */
+class OhlcvParserTest {
+
+    private static final String HEADER = "Date,Open,High,Low,Close,Volume\n";
+
+
+    @Test
+    void sampleFilesMatchFormerParser() throws Exception {
+        for (File file : sampleFiles()) {
+            try (Reader expected = new FileReader(file); Reader actual = new FileReader(file)) {
+                assertEquals(parseFormer(expected), parse(actual), file.getName());
+            }
+        }
+    }
+
+
+    @Test
+    void formatVariantsMatchFormerParser() throws Exception {
+        String csv = HEADER
+                + "02/29/2024,\"1,234.50\",\"1,240.125\",\"1,200\",\"1,239.99\",\"59,357,434\"\r\n"
+                + "\r\n"
+                + "\"12/31/1999\",0.5,1,0.25,.75,100\n"
+                + "\n"
+                + "01/01/2000,-1.5,\"-2\",3.000001,4,\"0\"\n"
+                + "9/5/2001,10,11,9,10.5,123456789012";
+
+        assertEquals(parseFormer(new StringReader(csv)), parse(new StringReader(csv)));
+    }
+
+
+    @Test
+    void decimalsAreCorrectlyRounded() throws Exception {
+        // Random prices with up to six decimals, quoted and grouped like exported files
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 10_000; i++) {
+            csv.append("01/02/2024");
+            for (int column = 0; column < 5; column++) {
+                long units = (long) (random.nextDouble() * 1e12);
+                String number = String.format(Locale.ROOT, "%,d.%06d", units / 1_000_000, units % 1_000_000);
+                csv.append(",\"").append(number).append('"');
+            }
+            csv.append('\n');
+        }
+
+        assertEquals(parseFormer(new StringReader(csv.toString())), parse(new StringReader(csv.toString())));
+    }
+
+
+    @Test
+    void headerIsOnlySkippedWhenRequested() throws Exception {
+        OhlcvParser parser = new OhlcvParser(new StringReader("09/16/2024,1,2,3,4,5\n"), false);
+
+        assertTrue(parser.next());
+        assertEquals(LocalDate.of(2024, 9, 16).toEpochDay(), parser.day());
+        assertEquals(5, parser.volume());
+        assertFalse(parser.next());
+    }
+
+
+    @Test
+    void malformedRowsAreRejected() {
+        for (String row : List.of(
+                "02/29/2023,1,2,3,4,5",
+                "13/01/2024,1,2,3,4,5",
+                "2024-01-01,1,2,3,4,5",
+                "01/01/2024,1,2,3,4",
+                "01/01/2024,1,2,x,4,5",
+                "01/01/2024,1,2,3,4,\"5")) {
+            OhlcvParser parser = new OhlcvParser(new StringReader(HEADER + row + "\n"));
+            assertThrows(IOException.class, parser::next, row);
+        }
+    }
+
+
+    /**
+     * Parses rows with the OhlcvParser.
+     * @param reader the reader of the .csv file
+     * @return the date of each row as yyyy-MM-dd followed by its numbers
+     * @throws IOException if a row is malformed
+     */
+    private static List<String> parse(Reader reader) throws IOException {
+        List<String> rows = new ArrayList<>();
+        OhlcvParser parser = new OhlcvParser(reader);
+        while (parser.next()) {
+            rows.add(LocalDate.ofEpochDay(parser.day()) + "," + parser.open() + "," + parser.high() + ","
+                    + parser.low() + "," + parser.close() + "," + parser.volume());
+        }
+        return rows;
+    }
+
+
+    /**
+     * Parses rows like the former ingestion did, with a CSVParser and two SimpleDateFormats per row, reading the
+     * numbers the way SQLite stored them after removing the digit grouping.
+     * @param reader the reader of the .csv file
+     * @return the date of each row as yyyy-MM-dd followed by its numbers
+     * @throws IOException if the file cannot be read
+     * @throws ParseException if a date is malformed
+     */
+    private static List<String> parseFormer(Reader reader) throws IOException, ParseException {
+        List<String> rows = new ArrayList<>();
+        try (CSVParser csvParser = new CSVParser(reader,
+                CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+            for (CSVRecord record : csvParser) {
+                SimpleDateFormat format1 = new SimpleDateFormat("MM/dd/yyyy");
+                SimpleDateFormat format2 = new SimpleDateFormat("yyyy-MM-dd");
+                StringBuilder row = new StringBuilder(format2.format(format1.parse(record.get(0))));
+                for (int i = 1; i < record.size(); i++) {
+                    row.append(',').append(Double.parseDouble(record.get(i).replace(",", "")));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+
+    /**
+     * Gets the sample .csv files of the repository.
+     * @return the .csv files in data/
+     */
+    static List<File> sampleFiles() {
+        List<File> files = new ArrayList<>();
+        File[] listed = new File("data").listFiles((directory, name) -> name.endsWith(".csv"));
+        assertTrue(listed != null && listed.length > 0, "sample files in data/");
+        for (File file : listed) {
+            files.add(file);
+        }
+        files.sort(null);
+        return files;
+    }
+
+}
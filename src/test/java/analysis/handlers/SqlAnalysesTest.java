@@ -0,0 +1,79 @@
+package analysis.handlers;
+
+import analysis.Analyses;
+import analysis.indicators.NaiveIndicators;
+import analysis.indicators.PriceSeries;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A class that tests that the SQL queries of DatabaseHandler, which read the cumulative sums stored at
+ * ingestion and run the ema() function, and the indicator engine over the loaded history both follow the bounds
+ * of the naive calculation in every storage mode: SMA and EMA cover the dates after the start of the period,
+ * Volatility includes the start date itself.
+ */
+class SqlAnalysesTest {
+
+    /**
+     * Time periods, including one of a single day, one longer than the sample files and ones starting on a
+     * weekend
+     */
+    private static final int[] DAYS = {1, 2, 3, 5, 30, 90, 360, 10_000};
+
+    @TempDir
+    Path directory;
+
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void queriesMatchNaiveCalculation(StorageMode mode) {
+        String url = "jdbc:sqlite:" + directory.resolve("stocks.db");
+        try (DatabaseHandler database = new DatabaseHandler(url, mode)) {
+            for (File file : OhlcvParserTest.sampleFiles()) {
+                assertEquals(UpdateResult.WRITTEN, database.updateDB(file), file.getName());
+            }
+
+            for (String stock : database.getAvailableStocks()) {
+                PriceSeries series = database.getPriceSeries(stock);
+                int end = series.size() - 1;
+                Map<Analyses, double[]> engine = database.analyze(EnumSet.allOf(Analyses.class), stock, DAYS);
+                for (int i = 0; i < DAYS.length; i++) {
+                    int days = DAYS[i];
+                    String name = stock + " over " + days + " days";
+
+                    double sma = NaiveIndicators.sma(series, end, days);
+                    assertClose(sma, database.getSMA(stock, days), "SQL SMA of " + name);
+                    assertClose(sma, engine.get(Analyses.SMA)[i], "engine SMA of " + name);
+
+                    double ema = NaiveIndicators.ema(series, end, days);
+                    assertClose(ema, database.getEMA(stock, days), "SQL EMA of " + name);
+                    assertClose(ema, engine.get(Analyses.EMA)[i], "engine EMA of " + name);
+
+                    double volatility = NaiveIndicators.volatility(series, end, days);
+                    assertClose(volatility, database.getVolatility(stock, days), "SQL Volatility of " + name);
+                    assertClose(volatility, engine.get(Analyses.Volatility)[i], "engine Volatility of " + name);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Asserts that a result matches the naive calculation up to the precision of a float.
+     * @param expected the naive result
+     * @param actual the result
+     * @param name the name of the result
+     */
+    private static void assertClose(double expected, double actual, String name) {
+        assertEquals(expected, actual, 1e-4 * Math.max(1, Math.abs(expected)), name);
+    }
+
+}
@@ -0,0 +1,168 @@
+package analysis.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A class that tests that the ema() and stddev() functions registered with SQLite match a naive calculation
+ * over the same rows, as window functions and as an aggregate.
+ */
+class SqlFunctionsTest {
+
+    private static final int ROWS = 500;
+
+    private static final int[] FRAMES = {1, 2, 5, 30};
+
+    private static final double TOLERANCE = 1e-9;
+
+
+    @Test
+    void emaMatchesRunningEma() throws SQLException {
+        double[] closes = closes();
+        try (Connection connection = open(closes)) {
+            for (int days : FRAMES) {
+                double alpha = 2 / (double) (days + 1);
+                String query = "SELECT ema(Close, ?) OVER (ORDER BY Day ROWS UNBOUNDED PRECEDING) FROM prices "
+                        + "ORDER BY Day";
+                try (PreparedStatement statement = connection.prepareStatement(query)) {
+                    statement.setDouble(1, alpha);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        double ema = closes[0];
+                        for (int i = 0; i < ROWS; i++) {
+                            assertTrue(resultSet.next());
+                            ema = i == 0 ? closes[0] : closes[i] * alpha + ema * (1 - alpha);
+                            assertEquals(ema, resultSet.getDouble(1), TOLERANCE,
+                                    "row " + i + " with alpha " + alpha);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void emaRejectsSlidingFrames() throws SQLException {
+        try (Connection connection = open(closes()); Statement statement = connection.createStatement()) {
+            assertThrows(SQLException.class, () -> {
+                try (ResultSet resultSet = statement.executeQuery(
+                        "SELECT ema(Close, 0.5) OVER (ORDER BY Day ROWS 2 PRECEDING) FROM prices")) {
+                    while (resultSet.next()) {
+                        resultSet.getDouble(1);
+                    }
+                }
+            });
+        }
+    }
+
+
+    @Test
+    void stddevMatchesTwoPass() throws SQLException {
+        double[] closes = closes();
+        try (Connection connection = open(closes); Statement statement = connection.createStatement()) {
+            // As an aggregate over all rows
+            try (ResultSet resultSet = statement.executeQuery("SELECT stddev(Close) FROM prices")) {
+                assertTrue(resultSet.next());
+                assertEquals(standardDeviation(closes, 0, ROWS), resultSet.getDouble(1), TOLERANCE);
+            }
+
+            // As a window function over sliding frames, which removes rows leaving the frame
+            for (int rows : FRAMES) {
+                String query = "SELECT stddev(Close) OVER (ORDER BY Day ROWS " + (rows - 1) + " PRECEDING) "
+                        + "FROM prices ORDER BY Day";
+                try (ResultSet resultSet = statement.executeQuery(query)) {
+                    for (int i = 0; i < ROWS; i++) {
+                        assertTrue(resultSet.next());
+                        assertEquals(standardDeviation(closes, Math.max(0, i - rows + 1), i + 1),
+                                resultSet.getDouble(1), TOLERANCE, "row " + i + " over " + rows + " rows");
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void emptyInputIsNull() throws SQLException {
+        try (Connection connection = open(new double[0]); Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT stddev(Close) FROM prices")) {
+                assertTrue(resultSet.next());
+                resultSet.getDouble(1);
+                assertTrue(resultSet.wasNull());
+            }
+        }
+    }
+
+
+    /**
+     * Opens an in-memory database with the analysis functions and a table of Close prices on consecutive days.
+     * @param closes the Close prices
+     * @return the connection to the database
+     * @throws SQLException if a database access error occurs
+     */
+    private static Connection open(double[] closes) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        SqlFunctions.register(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE prices (Day INTEGER PRIMARY KEY, Close REAL)");
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO prices VALUES (?, ?)")) {
+            for (int i = 0; i < closes.length; i++) {
+                statement.setInt(1, i);
+                statement.setDouble(2, closes[i]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        return connection;
+    }
+
+
+    /**
+     * Generates a random walk of Close prices far from zero.
+     * @return the Close prices
+     */
+    private static double[] closes() {
+        Random random = new Random(51);
+        double[] closes = new double[ROWS];
+        double close = 5000;
+        for (int i = 0; i < ROWS; i++) {
+            close *= 1 + random.nextGaussian() * 0.02;
+            closes[i] = close;
+        }
+        return closes;
+    }
+
+
+    /**
+     * Calculates the population standard deviation of a range of prices with the two-pass algorithm.
+     * @param closes the Close prices
+     * @param from the index of the first price, inclusive
+     * @param to the index after the last price, exclusive
+     * @return the standard deviation
+     */
+    private static double standardDeviation(double[] closes, int from, int to) {
+        double mean = 0;
+        for (int i = from; i < to; i++) {
+            mean += closes[i];
+        }
+        mean /= to - from;
+        double squares = 0;
+        for (int i = from; i < to; i++) {
+            squares += (closes[i] - mean) * (closes[i] - mean);
+        }
+        return Math.sqrt(squares / (to - from));
+    }
+
+}
@@ -0,0 +1,84 @@
+package analysis.handlers;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A class that tests that .csv files whose names do not denote a valid stock ticker, such as the names of the
+ * tables used internally or of staging tables, are rejected before they can replace any table, in every storage
+ * mode.
+ */
+class TickerNameTest {
+
+    /**
+     * Names of internal, staging and SQLite tables, and names that cannot name a table without quoting
+     */
+    private static final List<String> INVALID = List.of("ingest_state.csv", "prices.csv", "staging_aapl.csv",
+            "sqlite_master.csv", "a-b.csv", "1st.csv", "aapl;drop.csv");
+
+    @TempDir
+    Path directory;
+
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void rejectsReservedAndMalformedNames(StorageMode mode) throws IOException {
+        File sample = OhlcvParserTest.sampleFiles().get(0);
+        File aapl = copy(sample, "aapl.csv");
+        List<File> invalid = new ArrayList<>();
+        for (String name : INVALID) {
+            invalid.add(copy(sample, name));
+        }
+
+        String url = "jdbc:sqlite:" + directory.resolve("stocks.db");
+        try (DatabaseHandler database = new DatabaseHandler(url, mode)) {
+            assertEquals(UpdateResult.WRITTEN, database.updateDB(aapl));
+            int size = database.getPriceSeries("aapl").size();
+
+            for (File file : invalid) {
+                assertThrows(IllegalArgumentException.class, () -> database.prepareUpdate(file), file.getName());
+                assertThrows(IllegalArgumentException.class, () -> database.streamUpdate(file, 7, 20, null),
+                        file.getName());
+                assertEquals(UpdateResult.FAILED, database.updateDB(file), file.getName());
+            }
+            assertEquals(Set.of(UpdateResult.FAILED), Set.copyOf(database.bulkLoad(invalid, 2).values()));
+
+            assertEquals(List.of("aapl"), database.getAvailableStocks());
+            assertEquals(size, database.getPriceSeries("aapl").size());
+        }
+
+        // The ingestion state and the tables of the database are as they were
+        try (DatabaseHandler reopened = new DatabaseHandler(url, mode)) {
+            assertEquals(List.of("aapl"), reopened.getAvailableStocks());
+            assertEquals(UpdateResult.UNCHANGED, reopened.updateDB(aapl));
+        }
+    }
+
+
+    /**
+     * Copies a .csv file into the temporary directory under another name.
+     * @param source the .csv file to copy
+     * @param name the name of the copy, which names its stock
+     * @return the copy
+     * @throws IOException if the file cannot be copied
+     */
+    private File copy(File source, String name) throws IOException {
+        Path file = directory.resolve(name);
+        Files.copy(source.toPath(), file, StandardCopyOption.REPLACE_EXISTING);
+        return file.toFile();
+    }
+
+}
@@ -0,0 +1,105 @@
+package analysis.indicators;
+
+import analysis.Analyses;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A class that tests that the analyses of the indicator engine match the naive calculation over each time
+ * period.
+ */
+class IndicatorEngineTest {
+
+    private static final int[] DAYS = {1, 2, 5, 30, 90, 360};
+
+    private static final double TOLERANCE = 1e-7;
+
+
+    @Test
+    void computeMatchesNaiveCalculation() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(33, 1500);
+        assertComputeMatches(series, series);
+
+        // The same prices in off-heap columns, and in a series that is neither
+        OffHeapPriceSeries offHeap = new OffHeapPriceSeries(series.size());
+        for (int index = 0; index < series.size(); index++) {
+            offHeap.append(series.date(index), 0, 0, 0, series.close(index), 0);
+        }
+        assertComputeMatches(series, offHeap);
+        assertComputeMatches(series, new PriceSeries() {
+            @Override
+            public int size() {
+                return series.size();
+            }
+
+            @Override
+            public int date(int index) {
+                return series.date(index);
+            }
+
+            @Override
+            public double close(int index) {
+                return series.close(index);
+            }
+        });
+    }
+
+
+    /**
+     * Asserts that the analyses computed over a price series match the naive calculation at its last entry.
+     * @param expected the price series to calculate the naive analyses over
+     * @param series the same prices, stored in any way
+     */
+    private static void assertComputeMatches(PriceSeries expected, PriceSeries series) {
+        Map<Analyses, double[]> results = IndicatorEngine.compute(series, EnumSet.allOf(Analyses.class), DAYS);
+        int end = expected.size() - 1;
+        for (int i = 0; i < DAYS.length; i++) {
+            String name = series.getClass().getSimpleName() + " over " + DAYS[i] + " days";
+            assertEquals(NaiveIndicators.sma(expected, end, DAYS[i]), results.get(Analyses.SMA)[i], TOLERANCE,
+                    name);
+            assertEquals(NaiveIndicators.ema(expected, end, DAYS[i]), results.get(Analyses.EMA)[i], TOLERANCE,
+                    name);
+            assertEquals(NaiveIndicators.volatility(expected, end, DAYS[i]), results.get(Analyses.Volatility)[i],
+                    TOLERANCE, name);
+        }
+    }
+
+
+    @Test
+    void seriesMatchesNaiveCalculation() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(31, 2000);
+        IndicatorSeries values = IndicatorEngine.series(series, EnumSet.allOf(Analyses.class), DAYS);
+        for (int days : DAYS) {
+            double[] sma = values.values(Analyses.SMA, days);
+            double[] ema = values.values(Analyses.EMA, days);
+            double[] volatility = values.values(Analyses.Volatility, days);
+            for (int index = 0; index < series.size(); index++) {
+                String name = "entry " + index + " over " + days + " days";
+                assertEquals(NaiveIndicators.sma(series, index, days), sma[index], TOLERANCE, name);
+                assertEquals(NaiveIndicators.volatility(series, index, days), volatility[index], TOLERANCE, name);
+
+                // The EMA seeded at the start of each period, derived from the EMA seeded at the first entry
+                assertEquals(NaiveIndicators.ema(series, index, days), ema[index], TOLERANCE, name);
+            }
+        }
+    }
+
+
+    @Test
+    void seriesEndsWithCompute() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(32, 1000);
+        IndicatorSeries values = IndicatorEngine.series(series, EnumSet.allOf(Analyses.class), DAYS);
+        for (Analyses analysis : Analyses.values()) {
+            double[] results = IndicatorEngine.compute(series, EnumSet.of(analysis), DAYS).get(analysis);
+            for (int i = 0; i < DAYS.length; i++) {
+                assertEquals(results[i], values.values(analysis, DAYS[i])[series.size() - 1], TOLERANCE,
+                        analysis + " over " + DAYS[i] + " days");
+            }
+        }
+    }
+
+}
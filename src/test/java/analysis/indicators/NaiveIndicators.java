@@ -0,0 +1,114 @@
+package analysis.indicators;
+
+import java.util.Random;
+
+/**
+ * A class that calculates the analyses of a price series the naive way, scanning every entry of the time period
+ * again for every date, as references to test the optimized calculations against. Time periods end at a given
+ * entry and follow the bounds of the original SQL queries: SMA and EMA cover the dates after the start of the
+ * period, Volatility includes the start date itself.
+ */
+public final class NaiveIndicators {
+
+    private NaiveIndicators() {
+    }
+
+
+    /**
+     * Calculates the Simple Moving Average of the time period ending at an entry.
+     * @param series the price series
+     * @param end the index of the last entry of the time period
+     * @param days the time period, in past days from the last entry
+     * @return the average of the Close prices after the start of the time period
+     */
+    public static double sma(PriceSeries series, int end, int days) {
+        double sum = 0;
+        int count = 0;
+        for (int index = start(series, end, days, false); index <= end; index++) {
+            sum += series.close(index);
+            count++;
+        }
+        return sum / count;
+    }
+
+
+    /**
+     * Calculates the Exponential Moving Average of the time period ending at an entry.
+     * @param series the price series
+     * @param end the index of the last entry of the time period
+     * @param days the time period, in past days from the last entry
+     * @return the average of the Close prices after the start of the time period, seeded with the first one
+     */
+    public static double ema(PriceSeries series, int end, int days) {
+        double alpha = 2 / (double) (days + 1);
+        int start = start(series, end, days, false);
+        double ema = series.close(start);
+        for (int index = start + 1; index <= end; index++) {
+            ema = series.close(index) * alpha + ema * (1 - alpha);
+        }
+        return ema;
+    }
+
+
+    /**
+     * Calculates the Price Volatility of the time period ending at an entry with the two-pass algorithm.
+     * @param series the price series
+     * @param end the index of the last entry of the time period
+     * @param days the time period, in past days from the last entry
+     * @return the population standard deviation of the Close prices from the start of the time period on
+     */
+    public static double volatility(PriceSeries series, int end, int days) {
+        int start = start(series, end, days, true);
+        double sum = 0;
+        for (int index = start; index <= end; index++) {
+            sum += series.close(index);
+        }
+        double mean = sum / (end - start + 1);
+        double squares = 0;
+        for (int index = start; index <= end; index++) {
+            squares += (series.close(index) - mean) * (series.close(index) - mean);
+        }
+        return Math.sqrt(squares / (end - start + 1));
+    }
+
+
+    /**
+     * Finds the first entry of the time period ending at an entry, by scanning back from it.
+     * @param series the price series
+     * @param end the index of the last entry of the time period
+     * @param days the time period, in past days from the last entry
+     * @param inclusive whether the time period includes its start date
+     * @return the index of the first entry
+     */
+    private static int start(PriceSeries series, int end, int days, boolean inclusive) {
+        int first = series.date(end) - days + (inclusive ? 0 : 1);
+        int start = end;
+        while (start > 0 && series.date(start - 1) >= first) {
+            start--;
+        }
+        return start;
+    }
+
+
+    /**
+     * Generates a random walk of Close prices on ascending dates with gaps, like weekends and holidays.
+     * @param seed the seed of the random numbers
+     * @param size the number of entries
+     * @return the price series
+     */
+    public static ArrayPriceSeries randomSeries(long seed, int size) {
+        Random random = new Random(seed);
+        int[] dates = new int[size];
+        double[] closes = new double[size];
+        int date = 10_000;
+        double close = 150;
+        for (int i = 0; i < size; i++) {
+            date += 1 + (random.nextInt(5) == 0 ? random.nextInt(3) : 0);
+            close = Math.max(1, close * (1 + random.nextGaussian() * 0.02));
+            dates[i] = date;
+            closes[i] = close;
+        }
+        return new ArrayPriceSeries(dates, closes, size);
+    }
+
+}
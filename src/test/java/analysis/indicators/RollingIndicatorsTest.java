@@ -0,0 +1,89 @@
+package analysis.indicators;
+
+import analysis.Analyses;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A class that tests that the rolling indicators kept up to date price by price match the naive calculation
+ * over the whole history after every price, also when the price of the most recent date is revised.
+ */
+class RollingIndicatorsTest {
+
+    private static final int[] DAYS = {1, 2, 5, 30, 90};
+
+    private static final double TOLERANCE = 1e-9;
+
+
+    @Test
+    void updatesMatchNaiveCalculation() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(11, 1000);
+        RollingIndicators indicators = new RollingIndicators(DAYS);
+        for (int index = 0; index < series.size(); index++) {
+            indicators.update(series.date(index), series.close(index));
+            assertMatches(series, index, indicators);
+        }
+    }
+
+
+    @Test
+    void revisionsMatchNaiveCalculation() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(12, 500);
+        Random random = new Random(13);
+        RollingIndicators indicators = new RollingIndicators(DAYS);
+        for (int index = 0; index < series.size(); index++) {
+            // Quotes during the trading day, before the final Close
+            for (int quote = random.nextInt(3); quote > 0; quote--) {
+                indicators.update(series.date(index), series.close(index) + random.nextGaussian());
+            }
+            indicators.update(series.date(index), series.close(index));
+            assertMatches(series, index, indicators);
+        }
+    }
+
+
+    @Test
+    void seedMatchesNaiveCalculation() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(14, 600);
+        int seeded = 400;
+        RollingIndicators indicators = new RollingIndicators(DAYS);
+        indicators.seed(NaiveIndicators.randomSeries(14, seeded)); // The first entries of the same series
+        assertMatches(series, seeded - 1, indicators);
+        for (int index = seeded; index < series.size(); index++) {
+            indicators.update(series.date(index), series.close(index));
+            assertMatches(series, index, indicators);
+        }
+    }
+
+
+    @Test
+    void rejectsOlderDates() {
+        RollingIndicators indicators = new RollingIndicators(DAYS);
+        indicators.update(100, 1);
+        assertThrows(IllegalArgumentException.class, () -> indicators.update(99, 1));
+    }
+
+
+    /**
+     * Asserts that the current values of the rolling indicators match the naive calculation up to an entry.
+     * @param series the price series
+     * @param end the index of the most recent entry added
+     * @param indicators the rolling indicators
+     */
+    private static void assertMatches(PriceSeries series, int end, RollingIndicators indicators) {
+        for (int days : DAYS) {
+            String name = "entry " + end + " over " + days + " days";
+            assertEquals(NaiveIndicators.sma(series, end, days), indicators.value(Analyses.SMA, days), TOLERANCE,
+                    name);
+            assertEquals(NaiveIndicators.ema(series, end, days), indicators.value(Analyses.EMA, days), TOLERANCE,
+                    name);
+            assertEquals(NaiveIndicators.volatility(series, end, days),
+                    indicators.value(Analyses.Volatility, days), TOLERANCE, name);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package analysis.indicators;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A class that tests that Welford's rolling variance matches the two-pass variance of the same window, both
+ * while prices are added and removed in any order and over the sliding time periods of volatilitySeries.
+ */
+class RollingVarianceTest {
+
+    private static final int[] DAYS = {1, 2, 5, 30, 90, 360};
+
+    /**
+     * Rounding of the running mean carried through thousands of prices around 150, far below a cent
+     */
+    private static final double TOLERANCE = 1e-7;
+
+
+    @Test
+    void addAndRemoveMatchTwoPass() {
+        Random random = new Random(21);
+        RollingVariance variance = new RollingVariance();
+        Deque<Double> window = new ArrayDeque<>();
+        for (int step = 0; step < 10_000; step++) {
+            // Grow or shrink the window at either end, with prices far from zero
+            if (window.isEmpty() || random.nextInt(3) > 0) {
+                double close = 10_000 + random.nextGaussian();
+                variance.add(close);
+                window.addLast(close);
+            } else {
+                double close = random.nextBoolean() ? window.removeFirst() : window.removeLast();
+                variance.remove(close);
+            }
+
+            assertEquals(window.size(), variance.count());
+            double mean = window.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double squares = window.stream().mapToDouble(close -> (close - mean) * (close - mean)).sum();
+            assertEquals(mean, variance.mean(), 1e-9, "mean at step " + step);
+            assertEquals(window.isEmpty() ? 0 : squares / window.size(), variance.variance(), 1e-6,
+                    "variance at step " + step);
+        }
+    }
+
+
+    @Test
+    void volatilitySeriesMatchesNaiveCalculation() {
+        ArrayPriceSeries series = NaiveIndicators.randomSeries(22, 2000);
+        double[][] volatility = RollingVariance.volatilitySeries(series, DAYS);
+        for (int i = 0; i < DAYS.length; i++) {
+            for (int index = 0; index < series.size(); index++) {
+                assertEquals(NaiveIndicators.volatility(series, index, DAYS[i]), volatility[i][index], TOLERANCE,
+                        "entry " + index + " over " + DAYS[i] + " days");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package analysis.indicators;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A class that tests that the scalar and, where the Vector API is available, the vectorized window kernels match
+ * a naive loop over every window, on heap arrays and on columns, including windows shorter than a vector and
+ * windows not aligned to one.
+ */
+class WindowKernelsTest {
+
+    private static final int SIZE = 300;
+
+    private static final double TOLERANCE = 1e-9;
+
+
+    @Test
+    void kernelsMatchNaiveLoop() {
+        double[] prices = new double[SIZE];
+        Random random = new Random(41);
+        for (int i = 0; i < SIZE; i++) {
+            prices[i] = 100 + random.nextGaussian() * 10;
+        }
+        ByteBuffer column = ByteBuffer.allocateDirect(SIZE * Double.BYTES).order(ByteOrder.nativeOrder());
+        for (double price : prices) {
+            column.putDouble(price);
+        }
+
+        for (WindowKernels kernels : new WindowKernels[] {WindowKernels.scalar(), WindowKernels.get()}) {
+            for (int from = 0; from < 40; from++) {
+                for (int to = from; to <= SIZE; to += 1 + to / 10) {
+                    assertWindow(kernels, prices, column, from, to);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Asserts that all kernels match a naive loop over a window.
+     * @param kernels the kernels
+     * @param prices the prices
+     * @param column the same prices in a column
+     * @param from the index of the first price in the window, inclusive
+     * @param to the index after the last price in the window, exclusive
+     */
+    private static void assertWindow(WindowKernels kernels, double[] prices, ByteBuffer column, int from, int to) {
+        String name = (kernels.isVectorized() ? "vectorized" : "scalar") + " over [" + from + ", " + to + ")";
+        double sum = 0;
+        double squares = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            sum += prices[i];
+            squares += prices[i] * prices[i];
+            min = Math.min(min, prices[i]);
+            max = Math.max(max, prices[i]);
+        }
+        int count = to - from;
+        double mean = count == 0 ? 0 : sum / count;
+        double deviations = 0;
+        for (int i = from; i < to; i++) {
+            deviations += (prices[i] - mean) * (prices[i] - mean);
+        }
+        double variance = count == 0 ? 0 : deviations / count;
+
+        assertEquals(sum, kernels.sum(prices, from, to), TOLERANCE * Math.max(1, Math.abs(sum)), name);
+        assertEquals(squares, kernels.sumOfSquares(prices, from, to), TOLERANCE * Math.max(1, squares), name);
+        assertEquals(deviations, kernels.sumOfSquaredDeviations(prices, from, to, mean), TOLERANCE * SIZE, name);
+        assertEquals(min, kernels.min(prices, from, to), 0, name);
+        assertEquals(max, kernels.max(prices, from, to), 0, name);
+        assertEquals(variance, kernels.variance(prices, from, to), TOLERANCE, name);
+
+        assertEquals(sum, kernels.sum(column, from, to), TOLERANCE * Math.max(1, Math.abs(sum)), name);
+        assertEquals(deviations, kernels.sumOfSquaredDeviations(column, from, to, mean), TOLERANCE * SIZE, name);
+        assertEquals(variance, kernels.variance(column, from, to), TOLERANCE, name);
+    }
+
+}